@@ -0,0 +1,169 @@
+package com.epam.healenium.treecomparing;
+
+import java.util.Arrays;
+
+/**
+ * The same metric as {@link LCSPathDistance}, the length of the longest common subsequence of paths, evaluated by the
+ * bit-parallel algorithm of Allison-Dix and Hyyro. The nodes of the first path are mapped to bit masks of their
+ * positions once, nodes are equal if they have the same tag and id, see {@link Node#equals(Object)}. Each node of the
+ * second path then updates a bit vector of the length of the first path by a few word operations, instead of a column
+ * of the LCS table. A path of up to 64 nodes takes a single long.
+ * See H. Hyyro, "Bit-parallel LCS-length computation revisited", 2004
+ */
+public class BitParallelLCSPathDistance implements IncrementalPathDistance {
+
+    @Override
+    public int distance(Path path1, Path path2) {
+        Masks masks = new Masks(path1.getNodes());
+        if (masks.length == 0) {
+            return 0;
+        }
+        long[] vector = masks.initialVector();
+        for (Node node : path2.getNodes()) {
+            masks.step(vector, node, vector);
+        }
+        return masks.lcs(vector);
+    }
+
+    @Override
+    public Cursor cursor(Path path) {
+        return new BitParallelCursor(new Masks(path.getNodes()));
+    }
+
+    /**
+     * The masks of positions of each distinct node of a path, the bit i of a mask is set if the node is equal to
+     * the i-th node of the path. The masks are kept in an open addressing table by the hash codes of the nodes.
+     */
+    private static final class Masks {
+
+        private final int length;
+        private final int words;
+        private final int[] hashCodes;
+        private final Node[] nodes;
+        /**
+         * The masks of the slots of the table, words per slot
+         */
+        private final long[] masks;
+        private final long[] none;
+
+        Masks(Node[] path) {
+            this.length = path.length;
+            this.words = (length + Long.SIZE - 1) / Long.SIZE;
+            int capacity = Integer.highestOneBit(Math.max(length, 1) * 2 - 1) << 1;
+            this.hashCodes = new int[capacity];
+            this.nodes = new Node[capacity];
+            this.masks = new long[capacity * words];
+            this.none = new long[words];
+            for (int i = 0; i < path.length; i++) {
+                int hashCode = path[i].hashCode();
+                int slot = (hashCode ^ hashCode >>> 16) & (capacity - 1);
+                while (nodes[slot] != null && !(hashCodes[slot] == hashCode && nodes[slot].equals(path[i]))) {
+                    slot = (slot + 1) & (capacity - 1);
+                }
+                hashCodes[slot] = hashCode;
+                nodes[slot] = path[i];
+                masks[slot * words + i / Long.SIZE] |= 1L << i;
+            }
+        }
+
+        /**
+         * @return the slot of the mask of the node, -1 if the node is not in the path
+         */
+        private int slot(Node node) {
+            int hashCode = node.hashCode();
+            int mask = nodes.length - 1;
+            for (int slot = (hashCode ^ hashCode >>> 16) & mask; nodes[slot] != null; slot = (slot + 1) & mask) {
+                if (hashCodes[slot] == hashCode && nodes[slot].equals(node)) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * @return the vector of the empty path, all ones
+         */
+        long[] initialVector() {
+            long[] vector = new long[words];
+            Arrays.fill(vector, -1L);
+            return vector;
+        }
+
+        /**
+         * Appends the node to the path of the vector, the result may be written to the same array
+         */
+        void step(long[] vector, Node node, long[] result) {
+            int slot = slot(node);
+            long[] mask = slot < 0 ? none : masks;
+            int offset = slot < 0 ? 0 : slot * words;
+            long carry = 0;
+            for (int w = 0; w < words; w++) {
+                long v = vector[w];
+                long m = mask[offset + w];
+                long u = v & m;
+                long sum = v + u;
+                long nextCarry = Long.compareUnsigned(sum, v) < 0 ? 1 : 0;
+                sum += carry;
+                if (sum == 0 && carry != 0) {
+                    nextCarry = 1;
+                }
+                result[w] = sum | (v & ~m);
+                carry = nextCarry;
+            }
+        }
+
+        /**
+         * @return the number of zero bits of the vector within the path length
+         */
+        int lcs(long[] vector) {
+            int ones = 0;
+            for (int w = 0; w < words - 1; w++) {
+                ones += Long.bitCount(vector[w]);
+            }
+            int lastBits = length - (words - 1) * Long.SIZE;
+            long lastMask = lastBits == Long.SIZE ? -1L : (1L << lastBits) - 1;
+            ones += Long.bitCount(vector[words - 1] & lastMask);
+            return length - ones;
+        }
+    }
+
+    /**
+     * Keeps the bit vector per node of the current path
+     */
+    private static final class BitParallelCursor implements Cursor {
+
+        private final Masks masks;
+        private long[][] vectors;
+        private int depth;
+
+        BitParallelCursor(Masks masks) {
+            this.masks = masks;
+            this.vectors = new long[16][];
+            this.vectors[0] = masks.initialVector();
+        }
+
+        @Override
+        public void push(Node node) {
+            if (depth + 1 == vectors.length) {
+                vectors = Arrays.copyOf(vectors, vectors.length * 2);
+            }
+            long[] current = vectors[depth + 1];
+            if (current == null) {
+                current = new long[masks.words];
+                vectors[depth + 1] = current;
+            }
+            masks.step(vectors[depth], node, current);
+            depth++;
+        }
+
+        @Override
+        public void pop() {
+            depth--;
+        }
+
+        @Override
+        public int distance() {
+            return masks.length == 0 ? 0 : masks.lcs(vectors[depth]);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.epam.healenium.treecomparing;
+
+import java.util.Locale;
+
+/**
+ * Case-insensitive Levenshtein distance limited by a threshold, the same as comparing lower case copies of the strings
+ * with {@code new LevenshteinDistance(threshold)} from commons-text, but without allocating per comparison.
+ * <p>
+ * Only the diagonal band of the distance table within the threshold is evaluated (Ukkonen), the evaluation stops once
+ * the whole band row exceeds the threshold. The rows are kept in thread local buffers.
+ */
+final class BoundedLevenshteinDistance {
+
+    private static final int MAX_CACHED_ROW_LENGTH = 1 << 16;
+    private static final ThreadLocal<int[][]> ROWS = ThreadLocal.withInitial(() -> new int[][]{new int[64], new int[64]});
+
+    private BoundedLevenshteinDistance() {
+    }
+
+    /**
+     * @param left       the first string, not null
+     * @param right      the second string, not null
+     * @param threshold  the max distance of interest
+     * @param ignoreCase true to compare the lower case of each char, which is only valid for the strings accepted by
+     *                   {@link #isCharWiseLowerCase(CharSequence)}
+     * @return the distance between the strings, or -1 if it is greater than the threshold
+     */
+    static int apply(CharSequence left, CharSequence right, int threshold, boolean ignoreCase) {
+        if (left.length() < right.length()) {
+            CharSequence swap = left;
+            left = right;
+            right = swap;
+        }
+        int n = left.length();
+        int m = right.length();
+        if (n - m > threshold) {
+            return -1;
+        }
+        if (m == 0) {
+            return n;
+        }
+
+        int[][] rows = rows(m + 1);
+        int[] previous = rows[0];
+        int[] current = rows[1];
+        int boundary = Math.min(m, threshold);
+        for (int j = 0; j <= boundary; j++) {
+            previous[j] = j;
+        }
+        for (int j = boundary + 1; j <= m; j++) {
+            previous[j] = Integer.MAX_VALUE;
+        }
+
+        for (int i = 1; i <= n; i++) {
+            char leftChar = fold(left.charAt(i - 1), ignoreCase);
+            int min = Math.max(1, i - threshold);
+            int max = i > m - threshold ? m : i + threshold;
+            if (min > max) {
+                return -1;
+            }
+            current[min - 1] = min == 1 ? i : Integer.MAX_VALUE;
+            int rowMin = current[min - 1];
+            for (int j = min; j <= max; j++) {
+                if (fold(right.charAt(j - 1), ignoreCase) == leftChar) {
+                    current[j] = previous[j - 1];
+                } else {
+                    current[j] = 1 + Math.min(Math.min(current[j - 1], previous[j]), previous[j - 1]);
+                }
+                rowMin = Math.min(rowMin, current[j]);
+            }
+            if (rowMin > threshold) {
+                return -1;
+            }
+            if (max < m) {
+                current[max + 1] = Integer.MAX_VALUE;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[m] <= threshold ? previous[m] : -1;
+    }
+
+    private static int[][] rows(int length) {
+        if (length > MAX_CACHED_ROW_LENGTH) {
+            return new int[][]{new int[length], new int[length]};
+        }
+        int[][] rows = ROWS.get();
+        if (rows[0].length < length) {
+            int capacity = Math.max(length, rows[0].length * 2);
+            rows[0] = new int[capacity];
+            rows[1] = new int[capacity];
+        }
+        return rows;
+    }
+
+    private static char fold(char c, boolean ignoreCase) {
+        return ignoreCase ? Character.toLowerCase(c) : c;
+    }
+
+    /**
+     * @return true if {@link String#toLowerCase()} of the value is the lower case of each of its chars, otherwise
+     *         lower case may change the length or depend on the context and locale
+     */
+    static boolean isCharWiseLowerCase(CharSequence value) {
+        String language = Locale.getDefault().getLanguage();
+        if ("tr".equals(language) || "az".equals(language) || "lt".equals(language)) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (Character.isSurrogate(c) || c == '\u0130' || c == '\u03A3') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
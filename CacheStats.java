@@ -0,0 +1,34 @@
+package com.epam.healenium.treecomparing;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+
+/**
+ * Statistics of a cache at some moment
+ */
+@Getter
+@RequiredArgsConstructor
+@ToString
+public class CacheStats {
+
+    private final long hitCount;
+    private final long missCount;
+    private final long evictionCount;
+    /**
+     * The number of cached entries
+     */
+    private final long size;
+    /**
+     * The total weight of cached entries
+     */
+    private final long weight;
+
+    /**
+     * @return the ratio of hits to all requests, 1 if there were no requests
+     */
+    public double getHitRate() {
+        long requestCount = hitCount + missCount;
+        return requestCount == 0 ? 1 : (double) hitCount / requestCount;
+    }
+}
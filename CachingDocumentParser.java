@@ -0,0 +1,246 @@
+package com.epam.healenium.treecomparing;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+/**
+ * Parser which keeps the parsed trees of recent documents, so the same page submitted again is not parsed again.
+ * <p>
+ * The input is hashed (SHA-256) while it is read, documents of the same bytes share the tree. The cache is bounded
+ * by the total weight of the trees, the node count by default, the least recently used trees are evicted. Concurrent
+ * requests of the same document wait for a single parse. The trees are shared between callers, so they must not be
+ * modified. Thread safe if the delegate is.
+ */
+public class CachingDocumentParser implements DocumentParser {
+
+    private final DocumentParser delegate;
+    private final long maxWeight;
+    private final ToLongFunction<Node> weigher;
+    /**
+     * Guarded by itself, in the order of access
+     */
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final ConcurrentHashMap<Key, CompletableFuture<Node>> loading = new ConcurrentHashMap<>();
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+    private long weight;
+
+    /**
+     * @param delegate the parser of the documents which are not cached
+     * @param maxNodes the max total number of nodes of the cached trees
+     */
+    public CachingDocumentParser(DocumentParser delegate, long maxNodes) {
+        this(delegate, maxNodes, CachingDocumentParser::countNodes);
+    }
+
+    /**
+     * @param delegate the parser of the documents which are not cached
+     * @param maxWeight the max total weight of the cached trees
+     * @param weigher the weight of a tree by its root, e.g. an estimate of its size in bytes
+     */
+    public CachingDocumentParser(DocumentParser delegate, long maxWeight, ToLongFunction<Node> weigher) {
+        this.delegate = delegate;
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+    }
+
+    @Override
+    public Node parse(InputStream inputStream) {
+        Input input = read(inputStream);
+        Node cached = get(input.key);
+        if (cached != null) {
+            hitCount.increment();
+            return cached;
+        }
+        CompletableFuture<Node> future = new CompletableFuture<>();
+        CompletableFuture<Node> running = loading.putIfAbsent(input.key, future);
+        if (running != null) {
+            hitCount.increment();
+            return await(running);
+        }
+        try {
+            Node node = get(input.key);
+            if (node != null) {
+                hitCount.increment();
+            } else {
+                missCount.increment();
+                node = delegate.parse(new ByteArrayInputStream(input.bytes, 0, input.length));
+                put(input.key, node);
+            }
+            future.complete(node);
+            return node;
+        } catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(input.key, future);
+        }
+    }
+
+    /**
+     * @return the current statistics of the cache
+     */
+    public CacheStats getStats() {
+        synchronized (entries) {
+            return new CacheStats(hitCount.sum(), missCount.sum(), evictionCount.sum(), entries.size(), weight);
+        }
+    }
+
+    /**
+     * Removes all the cached trees
+     */
+    public void invalidateAll() {
+        synchronized (entries) {
+            entries.clear();
+            weight = 0;
+        }
+    }
+
+    /**
+     * @return the number of nodes in the tree
+     */
+    public static long countNodes(Node root) {
+        long count = 0;
+        Deque<Node> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            Node node = stack.pop();
+            count++;
+            if (node.getChildren() != null) {
+                node.getChildren().forEach(stack::push);
+            }
+        }
+        return count;
+    }
+
+    private Node get(Key key) {
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            return entry == null ? null : entry.node;
+        }
+    }
+
+    private void put(Key key, Node node) {
+        long nodeWeight = weigher.applyAsLong(node);
+        if (nodeWeight > maxWeight) {
+            return;
+        }
+        synchronized (entries) {
+            Entry previous = entries.put(key, new Entry(node, nodeWeight));
+            weight += nodeWeight - (previous == null ? 0 : previous.weight);
+            Iterator<Entry> iterator = entries.values().iterator();
+            while (weight > maxWeight) {
+                weight -= iterator.next().weight;
+                iterator.remove();
+                evictionCount.increment();
+            }
+        }
+    }
+
+    private static Node await(CompletableFuture<Node> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the whole input and hashes it on the way
+     */
+    private static Input read(InputStream inputStream) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] bytes = new byte[8192];
+        int length = 0;
+        try {
+            for (int read; (read = inputStream.read(bytes, length, bytes.length - length)) >= 0; ) {
+                digest.update(bytes, length, read);
+                length += read;
+                if (length == bytes.length) {
+                    bytes = Arrays.copyOf(bytes, bytes.length * 2);
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return new Input(new Key(digest.digest(), length), bytes, length);
+    }
+
+    private static final class Input {
+
+        private final Key key;
+        private final byte[] bytes;
+        private final int length;
+
+        Input(Key key, byte[] bytes, int length) {
+            this.key = key;
+            this.bytes = bytes;
+            this.length = length;
+        }
+    }
+
+    /**
+     * The hash and the length of a document
+     */
+    private static final class Key {
+
+        private final byte[] hash;
+        private final int length;
+        private final int hashCode;
+
+        Key(byte[] hash, int length) {
+            this.hash = hash;
+            this.length = length;
+            this.hashCode = 31 * Arrays.hashCode(hash) + length;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return length == key.length && Arrays.equals(hash, key.hash);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    private static final class Entry {
+
+        private final Node node;
+        private final long weight;
+
+        Entry(Node node, long weight) {
+            this.node = node;
+            this.weight = weight;
+        }
+    }
+}
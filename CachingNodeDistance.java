@@ -0,0 +1,217 @@
+package com.epam.healenium.treecomparing;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Node distance which keeps the recent results of the delegate, so the same nodes compared again, e.g. on a retry of
+ * the same search or by parallel searches in the same page, are not scored again.
+ * <p>
+ * A result is keyed by the fingerprints of the content of both nodes (tag, id, classes, other attributes, inner
+ * text), their indexes and the LCS distance and path height, not by the nodes, since {@link Node#equals(Object)}
+ * compares tag and id only and the trees are not kept. So the delegate must depend on nothing else, as
+ * {@link HeuristicNodeDistance} does. The fingerprints are 64 bit hashes, two pairs of different nodes get the same key
+ * with a negligible probability. The fingerprint of a node hashes its whole inner text, so the nodes of a searched
+ * {@link PreparedDocument} are keyed by the fingerprints the document evaluates once for all its nodes, while the
+ * nodes passed on their own are hashed on each call.
+ * <p>
+ * The cache is bounded by the number of results, the least recently used results are evicted. It is split into
+ * segments with own locks, so it can be shared by threads and by path finders. Thread safe if the delegate is.
+ */
+public class CachingNodeDistance implements NodeDistance {
+
+    private static final int MAX_SEGMENTS = 16;
+    /**
+     * The min number of results per segment, so a small cache is not split into tiny segments
+     */
+    private static final int MIN_SEGMENT_SIZE = 64;
+
+    private final NodeDistance delegate;
+    private final Segment[] segments;
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    /**
+     * @param delegate the node distance to cache the results of
+     * @param maxSize  the max number of cached results
+     */
+    public CachingNodeDistance(NodeDistance delegate, int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Max size must be positive, but was " + maxSize);
+        }
+        this.delegate = delegate;
+        int segmentCount = Integer.highestOneBit(Math.max(1, Math.min(MAX_SEGMENTS, maxSize / MIN_SEGMENT_SIZE)));
+        this.segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment(maxSize / segmentCount + (i < maxSize % segmentCount ? 1 : 0));
+        }
+    }
+
+    @Override
+    public double distance(Node node1, Node node2, int LCSDistance, int curPathHeight) {
+        Key key = new Key(contentKey(Fingerprints.of(node1), node1), contentKey(Fingerprints.of(node2), node2),
+                LCSDistance, curPathHeight);
+        Segment segment = segment(key);
+        Double cached = segment.get(key);
+        if (cached != null) {
+            hitCount.increment();
+            return cached;
+        }
+        missCount.increment();
+        double distance = delegate.distance(node1, node2, LCSDistance, curPathHeight);
+        segment.put(key, distance);
+        return distance;
+    }
+
+    @Override
+    public double distance(PathQuery query, Node node, int LCSDistance, int curPathHeight) {
+        Key key = new Key(contentKey(query.getFingerprint(), query.getNode()), contentKey(Fingerprints.of(node), node),
+                LCSDistance, curPathHeight);
+        Segment segment = segment(key);
+        Double cached = segment.get(key);
+        if (cached != null) {
+            hitCount.increment();
+            return cached;
+        }
+        missCount.increment();
+        double distance = delegate.distance(query, node, LCSDistance, curPathHeight);
+        segment.put(key, distance);
+        return distance;
+    }
+
+    @Override
+    public double distance(PathQuery query, PreparedDocument document, int position, int LCSDistance,
+                           int curPathHeight) {
+        Node node = document.getNode(position);
+        Key key = new Key(contentKey(query.getFingerprint(), query.getNode()),
+                contentKey(document.getFingerprint(position), node), LCSDistance, curPathHeight);
+        Segment segment = segment(key);
+        Double cached = segment.get(key);
+        if (cached != null) {
+            hitCount.increment();
+            return cached;
+        }
+        missCount.increment();
+        double distance = delegate.distance(query, document, position, LCSDistance, curPathHeight);
+        segment.put(key, distance);
+        return distance;
+    }
+
+    @Override
+    public double maxDistance(int LCSDistance, int curPathHeight) {
+        return delegate.maxDistance(LCSDistance, curPathHeight);
+    }
+
+    /**
+     * @return the current statistics of the cache, the weight is the number of cached results
+     */
+    public CacheStats getStats() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return new CacheStats(hitCount.sum(), missCount.sum(), evictionCount.sum(), size, size);
+    }
+
+    /**
+     * Removes all the cached results
+     */
+    public void invalidateAll() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    private Segment segment(Key key) {
+        int hashCode = key.hashCode();
+        return segments[(hashCode ^ hashCode >>> 16) & (segments.length - 1)];
+    }
+
+    private static long contentKey(long fingerprint, Node node) {
+        return Fingerprints.mix(fingerprint, node.getIndex() == null ? -1 : node.getIndex());
+    }
+
+    /**
+     * A part of the cache with its own lock, in the order of access
+     */
+    private final class Segment {
+
+        private final int maxSize;
+        /**
+         * Guarded by itself
+         */
+        private final LinkedHashMap<Key, Double> results = new LinkedHashMap<>(16, 0.75f, true);
+
+        Segment(int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        Double get(Key key) {
+            synchronized (results) {
+                return results.get(key);
+            }
+        }
+
+        void put(Key key, double distance) {
+            synchronized (results) {
+                results.put(key, distance);
+                Iterator<Map.Entry<Key, Double>> iterator = results.entrySet().iterator();
+                while (results.size() > maxSize) {
+                    iterator.next();
+                    iterator.remove();
+                    evictionCount.increment();
+                }
+            }
+        }
+
+        int size() {
+            synchronized (results) {
+                return results.size();
+            }
+        }
+
+        void clear() {
+            synchronized (results) {
+                results.clear();
+            }
+        }
+    }
+
+    /**
+     * The content of both nodes and the path inputs of a distance
+     */
+    private static final class Key {
+
+        private final long first;
+        private final long second;
+        private final int LCSDistance;
+        private final int curPathHeight;
+        private final int hashCode;
+
+        Key(long first, long second, int LCSDistance, int curPathHeight) {
+            this.first = first;
+            this.second = second;
+            this.LCSDistance = LCSDistance;
+            this.curPathHeight = curPathHeight;
+            long path = (long) LCSDistance << 32 | curPathHeight & 0xFFFFFFFFL;
+            this.hashCode = (int) Fingerprints.mix(Fingerprints.mix(first, second), path);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return first == key.first && second == key.second
+                    && LCSDistance == key.LCSDistance && curPathHeight == key.curPathHeight;
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
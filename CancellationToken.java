@@ -0,0 +1,22 @@
+package com.epam.healenium.treecomparing;
+
+/**
+ * A flag to stop a running search from another thread, see {@link PathFinder#find(PathQuery, PreparedDocument, int,
+ * long, java.util.concurrent.TimeUnit, CancellationToken)}. The search returns the nodes found so far soon after the
+ * token is cancelled. Thread safe.
+ */
+public final class CancellationToken {
+
+    private volatile boolean cancelled;
+
+    /**
+     * Requests the searches given this token to stop
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+}
@@ -0,0 +1,574 @@
+package com.epam.healenium.treecomparing;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Compact copy of a tree of {@link Node}s: the nodes are kept in document (preorder) order as columns of ints, i.e.
+ * parent, first child, next sibling, depth, tag and so on, instead of an object per node with its own sets, maps and
+ * lists. Strings are kept once per document in a table and referred to by their positions, classes and attributes of
+ * all nodes are packed into a single array, inner texts are ranges of the text of the whole document.
+ * <p>
+ * The columns and the text may be kept off heap in direct buffers, so many documents can be retained without a load
+ * on the garbage collector. The nodes are accessed through lightweight {@link Node} views, which {@link PathFinder}
+ * and the distances work with as with any other nodes, see {@link #prepare()}. The views belong to the root view or
+ * the prepared document they are reached from, not to the document, so they are collected once it is not used
+ * anymore, e.g. after a search, while the document is retained. A view reads the classes and attributes out of the
+ * columns once they are first used. The document is immutable and can be shared between threads.
+ */
+public final class ColumnarDocument {
+
+    private static final int PARENT = 0;
+    private static final int FIRST_CHILD = 1;
+    private static final int NEXT_SIBLING = 2;
+    private static final int DEPTH = 3;
+    private static final int END = 4;
+    private static final int TAG = 5;
+    private static final int ID = 6;
+    private static final int INDEX = 7;
+    private static final int CLASS_OFFSET = 8;
+    private static final int CLASS_COUNT = 9;
+    private static final int ATTRIBUTE_OFFSET = 10;
+    private static final int ATTRIBUTE_COUNT = 11;
+    private static final int TEXT_START = 12;
+    private static final int TEXT_END = 13;
+    static final int COLUMNS = 14;
+
+    private final int size;
+    private final boolean offHeap;
+    private final IntBuffer columns;
+    /**
+     * Sorted classes of each node, then the sorted names of other attributes each followed by the value
+     */
+    private final IntBuffer packed;
+    private final String[] strings;
+    private final CharBuffer text;
+    private final DocumentText documentText;
+
+    /**
+     * @param root the root of the parsed DOM, copied on heap
+     */
+    public ColumnarDocument(Node root) {
+        this(root, false);
+    }
+
+    /**
+     * @param root    the root of the parsed DOM
+     * @param offHeap true to keep the columns and the text in direct buffers
+     */
+    public ColumnarDocument(Node root, boolean offHeap) {
+        PreparedDocument document = new PreparedDocument(root);
+        this.size = document.size();
+        this.offHeap = offHeap;
+
+        int[] columns = new int[COLUMNS * size];
+        int[] packed = new int[16];
+        int packedLength = 0;
+        Map<String, Integer> positions = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        TextBuilder text = new TextBuilder(document);
+        for (int i = 0; i < size; i++) {
+            Node node = document.getNode(i);
+            int parent = document.getParent(i);
+            int end = document.getEnd(i);
+            columns[PARENT * size + i] = parent;
+            columns[FIRST_CHILD * size + i] = end > i + 1 ? i + 1 : -1;
+            columns[NEXT_SIBLING * size + i] = end < size && document.getParent(end) == parent ? end : -1;
+            columns[DEPTH * size + i] = document.getDepth(i);
+            columns[END * size + i] = end;
+            columns[TAG * size + i] = symbol(node.getTag(), positions, strings);
+            columns[ID * size + i] = symbol(node.getId(), positions, strings);
+            columns[INDEX * size + i] = node.getIndex() == null ? -1 : node.getIndex();
+
+            String[] classes = node.getSortedClasses();
+            String[] names = node.getOtherAttributeNames();
+            String[] values = node.getOtherAttributeValues();
+            int length = packedLength + classes.length + 2 * names.length;
+            if (length > packed.length) {
+                packed = Arrays.copyOf(packed, Math.max(length, packed.length * 2));
+            }
+            columns[CLASS_OFFSET * size + i] = packedLength;
+            columns[CLASS_COUNT * size + i] = classes.length;
+            for (String value : classes) {
+                packed[packedLength++] = symbol(value, positions, strings);
+            }
+            columns[ATTRIBUTE_OFFSET * size + i] = packedLength;
+            columns[ATTRIBUTE_COUNT * size + i] = names.length;
+            for (int j = 0; j < names.length; j++) {
+                packed[packedLength++] = symbol(names[j], positions, strings);
+                packed[packedLength++] = symbol(values[j], positions, strings);
+            }
+
+            text.add(node, document.getDepth(i));
+            columns[TEXT_START * size + i] = text.start;
+            columns[TEXT_END * size + i] = text.end;
+        }
+        this.columns = allocate(columns, columns.length, offHeap);
+        this.packed = allocate(packed, packedLength, offHeap);
+        this.strings = strings.toArray(new String[0]);
+        this.text = text.build(offHeap);
+        this.documentText = new DocumentText(this.text);
+    }
+
+    /**
+     * @param size    the number of nodes
+     * @param columns the columns of the nodes, one after another
+     * @param packed  the classes and attributes of the nodes
+     * @param strings the strings the columns refer to
+     * @param text    the inner texts of the nodes
+     * @param offHeap true if the buffers are direct or mapped
+     */
+    ColumnarDocument(int size, IntBuffer columns, IntBuffer packed, String[] strings, CharBuffer text, boolean offHeap) {
+        this.size = size;
+        this.columns = columns;
+        this.packed = packed;
+        this.strings = strings;
+        this.text = text;
+        this.offHeap = offHeap;
+        this.documentText = new DocumentText(text);
+    }
+
+    private static int symbol(String value, Map<String, Integer> positions, List<String> strings) {
+        if (value == null) {
+            return -1;
+        }
+        Integer position = positions.get(value);
+        if (position == null) {
+            position = strings.size();
+            positions.put(value, position);
+            strings.add(value);
+        }
+        return position;
+    }
+
+    private static IntBuffer allocate(int[] values, int length, boolean offHeap) {
+        if (!offHeap) {
+            return IntBuffer.wrap(length == values.length ? values : Arrays.copyOf(values, length));
+        }
+        IntBuffer buffer = ByteBuffer.allocateDirect(length * Integer.BYTES).order(ByteOrder.nativeOrder()).asIntBuffer();
+        buffer.put(values, 0, length);
+        buffer.rewind();
+        return buffer;
+    }
+
+    /**
+     * @return the number of nodes
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return true if the columns and the text are kept in direct buffers
+     */
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    /**
+     * @return a new view of the root node, the views of the other nodes reached from it are created once first
+     *         accessed and kept as long as any of them is used, so the same node is the same view
+     */
+    public Node getRoot() {
+        return getNode(0);
+    }
+
+    /**
+     * @return a new view of the node at the position, with its own views of the other nodes as of {@link #getRoot()}
+     */
+    public Node getNode(int position) {
+        return new Views(this).get(position);
+    }
+
+    /**
+     * @return the position of the parent node, -1 for the root
+     */
+    public int getParent(int position) {
+        return column(PARENT, position);
+    }
+
+    /**
+     * @return the position of the first child, -1 for a leaf
+     */
+    public int getFirstChild(int position) {
+        return column(FIRST_CHILD, position);
+    }
+
+    /**
+     * @return the position of the next sibling, -1 for the last child
+     */
+    public int getNextSibling(int position) {
+        return column(NEXT_SIBLING, position);
+    }
+
+    /**
+     * @return the distance from the root, the root itself has depth 0
+     */
+    public int getDepth(int position) {
+        return column(DEPTH, position);
+    }
+
+    /**
+     * @return the position right after the last node of the subtree
+     */
+    public int getEnd(int position) {
+        return column(END, position);
+    }
+
+    public String getTag(int position) {
+        return string(column(TAG, position));
+    }
+
+    /**
+     * @return the document to search paths in, with a view per node, which are collected with it
+     */
+    public PreparedDocument prepare() {
+        Views views = new Views(this);
+        Node[] nodes = new Node[size];
+        int[] depths = new int[size];
+        int[] parents = new int[size];
+        int[] ends = new int[size];
+        for (int i = 0; i < size; i++) {
+            nodes[i] = views.get(i);
+            depths[i] = getDepth(i);
+            parents[i] = getParent(i);
+            ends[i] = getEnd(i);
+        }
+        return new PreparedDocument(nodes, depths, parents, ends);
+    }
+
+    IntBuffer getColumns() {
+        return columns.duplicate();
+    }
+
+    IntBuffer getPacked() {
+        return packed.duplicate();
+    }
+
+    String[] getStrings() {
+        return strings;
+    }
+
+    CharBuffer getText() {
+        return text.duplicate();
+    }
+
+    /**
+     * Checks that the columns describe a tree in document order and refer to the strings, the packed ints and the text
+     * within their lengths, so a corrupt snapshot fails to be read rather than once a node is accessed
+     *
+     * @throws IOException if a column value is out of its range
+     */
+    void checkColumns() throws IOException {
+        int[] ancestors = new int[16];
+        int top = -1;
+        for (int i = 0; i < size; i++) {
+            int end = column(END, i);
+            while (top >= 0 && column(END, ancestors[top]) <= i) {
+                top--;
+            }
+            int parent = top >= 0 ? ancestors[top] : -1;
+            int parentEnd = top >= 0 ? column(END, parent) : size;
+            if (i > 0 && parent < 0 || column(PARENT, i) != parent
+                    || end <= i || end > parentEnd || i == 0 && end != size
+                    || column(DEPTH, i) != top + 1
+                    || column(FIRST_CHILD, i) != (end > i + 1 ? i + 1 : -1)
+                    || column(NEXT_SIBLING, i) != (end < parentEnd ? end : -1)) {
+                throw new IOException("Corrupt document snapshot, node " + i + " is not in the tree of the nodes");
+            }
+            if (++top == ancestors.length) {
+                ancestors = Arrays.copyOf(ancestors, top * 2);
+            }
+            ancestors[top] = i;
+
+            checkString(column(TAG, i), i);
+            checkString(column(ID, i), i);
+            int classOffset = column(CLASS_OFFSET, i);
+            int classCount = column(CLASS_COUNT, i);
+            int attributeOffset = column(ATTRIBUTE_OFFSET, i);
+            int attributeCount = column(ATTRIBUTE_COUNT, i);
+            if (column(INDEX, i) < -1
+                    || classOffset < 0 || classCount < 0 || (long) classOffset + classCount > packed.limit()
+                    || attributeOffset < 0 || attributeCount < 0
+                    || attributeOffset + 2L * attributeCount > packed.limit()) {
+                throw new IOException("Corrupt document snapshot, the index, classes or attributes of node " + i
+                        + " are out of range");
+            }
+            for (int j = classOffset; j < classOffset + classCount; j++) {
+                checkString(packed.get(j), i);
+            }
+            for (int j = attributeOffset; j < attributeOffset + 2 * attributeCount; j++) {
+                checkString(packed.get(j), i);
+            }
+            int textStart = column(TEXT_START, i);
+            int textEnd = column(TEXT_END, i);
+            if (textStart < 0 ? textStart != -1 || textEnd != -1 : textEnd < textStart || textEnd > text.limit()) {
+                throw new IOException("Corrupt document snapshot, the text of node " + i + " is out of range");
+            }
+        }
+    }
+
+    private void checkString(int value, int position) throws IOException {
+        if (value < -1 || value >= strings.length) {
+            throw new IOException("Corrupt document snapshot, node " + position + " refers to string " + value
+                    + " of " + strings.length);
+        }
+    }
+
+    private int column(int column, int position) {
+        return columns.get(column * size + position);
+    }
+
+    private String string(int position) {
+        return position < 0 ? null : strings[position];
+    }
+
+    /**
+     * Collects the inner texts of the nodes. The text of a parsed document is copied as is, otherwise the inner text
+     * of a node is looked up in the one of its parent and only added if it is not there.
+     */
+    private static final class TextBuilder {
+
+        private final DocumentText documentText;
+        private final StringBuilder text = new StringBuilder();
+        private String[] ancestorTexts = new String[16];
+        private int[] ancestorStarts = new int[16];
+        private int start;
+        private int end;
+
+        TextBuilder(PreparedDocument document) {
+            DocumentText shared = document.getNode(0).getDocumentText();
+            for (int i = 1; i < document.size() && shared != null; i++) {
+                if (document.getNode(i).getDocumentText() != shared) {
+                    shared = null;
+                }
+            }
+            this.documentText = shared;
+            if (shared != null) {
+                text.append(shared.substring(0, shared.length()));
+            }
+        }
+
+        void add(Node node, int depth) {
+            if (documentText != null) {
+                start = node.getTextStart();
+                end = node.getTextEnd();
+                return;
+            }
+            String value = node.getInnerText();
+            if (value == null) {
+                start = -1;
+                end = -1;
+            } else {
+                int found = depth > 0 && ancestorTexts[depth - 1] != null ? ancestorTexts[depth - 1].indexOf(value) : -1;
+                if (found >= 0) {
+                    start = ancestorStarts[depth - 1] + found;
+                } else {
+                    start = text.length();
+                    text.append(value);
+                }
+                end = start + value.length();
+            }
+            if (depth == ancestorTexts.length) {
+                ancestorTexts = Arrays.copyOf(ancestorTexts, depth * 2);
+                ancestorStarts = Arrays.copyOf(ancestorStarts, depth * 2);
+            }
+            ancestorTexts[depth] = value;
+            ancestorStarts[depth] = start;
+        }
+
+        CharBuffer build(boolean offHeap) {
+            if (!offHeap) {
+                return CharBuffer.wrap(text.toString());
+            }
+            CharBuffer buffer = ByteBuffer.allocateDirect(text.length() * Character.BYTES).order(ByteOrder.nativeOrder())
+                    .asCharBuffer();
+            buffer.put(text.toString());
+            buffer.rewind();
+            return buffer;
+        }
+    }
+
+    /**
+     * The classes and attributes of a node read out of the packed array
+     */
+    private static final class Attributes {
+
+        private final String[] classes;
+        private final String[] names;
+        private final String[] values;
+
+        Attributes(ColumnarDocument document, int position) {
+            int classOffset = document.column(CLASS_OFFSET, position);
+            int classCount = document.column(CLASS_COUNT, position);
+            this.classes = classCount == 0 ? SortedArrays.EMPTY : new String[classCount];
+            for (int i = 0; i < classCount; i++) {
+                classes[i] = document.string(document.packed.get(classOffset + i));
+            }
+            int attributeOffset = document.column(ATTRIBUTE_OFFSET, position);
+            int attributeCount = document.column(ATTRIBUTE_COUNT, position);
+            this.names = attributeCount == 0 ? SortedArrays.EMPTY : new String[attributeCount];
+            this.values = attributeCount == 0 ? SortedArrays.EMPTY : new String[attributeCount];
+            for (int i = 0; i < attributeCount; i++) {
+                names[i] = document.string(document.packed.get(attributeOffset + 2 * i));
+                values[i] = document.string(document.packed.get(attributeOffset + 2 * i + 1));
+            }
+        }
+    }
+
+    /**
+     * The views of the nodes reachable from each other, created once first accessed
+     */
+    private static final class Views {
+
+        private final ColumnarDocument document;
+        private final AtomicReferenceArray<View> views;
+
+        Views(ColumnarDocument document) {
+            this.document = document;
+            this.views = new AtomicReferenceArray<>(document.size);
+        }
+
+        Node get(int position) {
+            View view = views.get(position);
+            if (view == null) {
+                view = new View(this, position);
+                if (!views.compareAndSet(position, null, view)) {
+                    view = views.get(position);
+                }
+            }
+            return view;
+        }
+    }
+
+    /**
+     * A node of the document, its classes and attributes are read out of the columns on first use
+     */
+    private static final class View extends Node {
+
+        private final ColumnarDocument document;
+        private final Views views;
+        private final int position;
+        /**
+         * Null until first used, the fields of the attributes are final, so they may be read in a race
+         */
+        private Attributes attributes;
+
+        View(Views views, int position) {
+            this.document = views.document;
+            this.views = views;
+            this.position = position;
+        }
+
+        private Attributes attributes() {
+            Attributes result = attributes;
+            if (result == null) {
+                result = new Attributes(document, position);
+                attributes = result;
+            }
+            return result;
+        }
+
+        @Override
+        public String getTag() {
+            return document.getTag(position);
+        }
+
+        @Override
+        public String getId() {
+            return document.string(document.column(ID, position));
+        }
+
+        @Override
+        public Set<String> getClasses() {
+            return SortedArrays.asSet(attributes().classes);
+        }
+
+        @Override
+        public Integer getIndex() {
+            int index = document.column(INDEX, position);
+            return index < 0 ? null : index;
+        }
+
+        @Override
+        public Map<String, String> getOtherAttributes() {
+            Attributes result = attributes();
+            return SortedArrays.asMap(result.names, result.values);
+        }
+
+        @Override
+        public String getInnerText() {
+            CharSequence view = getInnerTextView();
+            return view == null ? null : view.toString();
+        }
+
+        @Override
+        public CharSequence getInnerTextView() {
+            int start = document.column(TEXT_START, position);
+            return start < 0 ? null : document.text.subSequence(start, document.column(TEXT_END, position));
+        }
+
+        @Override
+        public List<Node> getChildren() {
+            int child = document.getFirstChild(position);
+            if (child < 0) {
+                return Collections.emptyList();
+            }
+            List<Node> children = new ArrayList<>();
+            for (; child >= 0; child = document.getNextSibling(child)) {
+                children.add(views.get(child));
+            }
+            return Collections.unmodifiableList(children);
+        }
+
+        @Override
+        public Node getParent() {
+            int parent = document.getParent(position);
+            return parent < 0 ? null : views.get(parent);
+        }
+
+        @Override
+        String[] getSortedClasses() {
+            return attributes().classes;
+        }
+
+        @Override
+        String[] getOtherAttributeNames() {
+            return attributes().names;
+        }
+
+        @Override
+        String[] getOtherAttributeValues() {
+            return attributes().values;
+        }
+
+        /**
+         * @return the text of the document, or null if the node has no inner text
+         */
+        @Override
+        DocumentText getDocumentText() {
+            return document.column(TEXT_START, position) < 0 ? null : document.documentText;
+        }
+
+        @Override
+        int getTextStart() {
+            return document.column(TEXT_START, position);
+        }
+
+        @Override
+        int getTextEnd() {
+            return document.column(TEXT_END, position);
+        }
+    }
+}
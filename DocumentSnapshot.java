@@ -0,0 +1,206 @@
+package com.epam.healenium.treecomparing;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Binary snapshot of a parsed DOM, which is loaded much faster than the page is parsed again.
+ * <p>
+ * The snapshot is the {@link ColumnarDocument} of the DOM as is: a header with the format version, the string table,
+ * the columns of the nodes, the packed classes and attributes and the text, little endian. Reading a file maps it
+ * into memory, only the string table is decoded, the nodes are read out of the mapped file once they are accessed.
+ * Snapshots written by older versions of the format stay readable.
+ */
+public final class DocumentSnapshot {
+
+    /**
+     * The format version written, increased on each change of the format
+     */
+    public static final int VERSION = 1;
+
+    private static final int MAGIC = 0x48544453;
+    private static final int HEADER_LENGTH = 8 * Integer.BYTES;
+
+    private DocumentSnapshot() {
+    }
+
+    /**
+     * @param root the root of the parsed DOM
+     * @param file the file to write the snapshot to, overwritten if exists
+     */
+    public static void write(Node root, File file) throws IOException {
+        write(new ColumnarDocument(root), file);
+    }
+
+    /**
+     * @param document the document to write
+     * @param file     the file to write the snapshot to, overwritten if exists
+     */
+    public static void write(ColumnarDocument document, File file) throws IOException {
+        try (OutputStream outputStream = new FileOutputStream(file)) {
+            write(document, outputStream);
+        }
+    }
+
+    /**
+     * @param document     the document to write
+     * @param outputStream the stream to write the snapshot to, not closed
+     */
+    public static void write(ColumnarDocument document, OutputStream outputStream) throws IOException {
+        String[] strings = document.getStrings();
+        byte[][] encoded = new byte[strings.length][];
+        int stringsLength = 0;
+        for (int i = 0; i < strings.length; i++) {
+            encoded[i] = strings[i].getBytes(StandardCharsets.UTF_8);
+            stringsLength += Integer.BYTES + encoded[i].length;
+        }
+        stringsLength = align(stringsLength);
+        IntBuffer columns = document.getColumns();
+        IntBuffer packed = document.getPacked();
+        CharBuffer text = document.getText();
+
+        WritableByteChannel channel = Channels.newChannel(outputStream);
+        ByteBuffer header = allocate(HEADER_LENGTH)
+                .putInt(MAGIC)
+                .putInt(VERSION)
+                .putInt(document.size())
+                .putInt(ColumnarDocument.COLUMNS)
+                .putInt(packed.remaining())
+                .putInt(strings.length)
+                .putInt(stringsLength)
+                .putInt(text.remaining());
+        writeFully(channel, header);
+
+        ByteBuffer table = allocate(stringsLength);
+        for (byte[] value : encoded) {
+            table.putInt(value.length).put(value);
+        }
+        writeFully(channel, table);
+
+        ByteBuffer ints = allocate((columns.remaining() + packed.remaining()) * Integer.BYTES);
+        ints.asIntBuffer().put(columns).put(packed);
+        writeFully(channel, ints);
+
+        ByteBuffer chars = allocate(text.remaining() * Character.BYTES);
+        chars.asCharBuffer().put(text);
+        writeFully(channel, chars);
+    }
+
+    /**
+     * Maps the snapshot file into memory, the file may be changed or deleted once the document is not used anymore
+     *
+     * @param file the file a snapshot was written to
+     * @return the document of the snapshot, backed by the mapped file
+     */
+    public static ColumnarDocument read(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * @param buffer the bytes of a snapshot from its position till the limit, which are not copied
+     * @return the document of the snapshot, backed by the buffer
+     * @throws IOException if the buffer is not a snapshot, or its header or columns do not match its content
+     */
+    public static ColumnarDocument read(ByteBuffer buffer) throws IOException {
+        ByteBuffer snapshot = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        if (snapshot.remaining() < HEADER_LENGTH || snapshot.getInt() != MAGIC) {
+            throw new IOException("Not a document snapshot");
+        }
+        int version = snapshot.getInt();
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Unsupported document snapshot version " + version + ", the latest known is " + VERSION);
+        }
+        int size = snapshot.getInt();
+        int columnCount = snapshot.getInt();
+        int packedLength = snapshot.getInt();
+        int stringCount = snapshot.getInt();
+        int stringsLength = snapshot.getInt();
+        int textLength = snapshot.getInt();
+        if (columnCount != ColumnarDocument.COLUMNS) {
+            throw new IOException("Unexpected number of columns " + columnCount + " in a document snapshot");
+        }
+        if (size <= 0 || packedLength < 0 || stringCount < 0 || stringsLength < 0 || textLength < 0
+                || stringCount > stringsLength / Integer.BYTES) {
+            throw new IOException("Corrupt document snapshot header: " + size + " nodes, " + packedLength
+                    + " packed ints, " + stringCount + " strings of " + stringsLength + " bytes, " + textLength
+                    + " chars");
+        }
+        long columnsLength = Math.multiplyExact(Math.multiplyExact((long) size, columnCount), Integer.BYTES);
+        long packedBytes = (long) packedLength * Integer.BYTES;
+        long length = HEADER_LENGTH + (long) stringsLength + columnsLength + packedBytes
+                + (long) textLength * Character.BYTES;
+        if (snapshot.limit() != length) {
+            throw new IOException("Document snapshot is " + snapshot.limit() + " bytes long, but its header describes "
+                    + length + " bytes");
+        }
+
+        String[] strings = new String[stringCount];
+        int stringsEnd = HEADER_LENGTH + stringsLength;
+        for (int i = 0; i < stringCount; i++) {
+            int valueLength = snapshot.getInt();
+            if (valueLength < 0 || valueLength > stringsEnd - snapshot.position()) {
+                throw new IOException("Corrupt document snapshot, string " + i + " of " + valueLength
+                        + " bytes does not fit into the string table");
+            }
+            byte[] value = new byte[valueLength];
+            snapshot.get(value);
+            strings[i] = new String(value, StandardCharsets.UTF_8);
+            if (i + 1 < stringCount && stringsEnd - snapshot.position() < Integer.BYTES) {
+                throw new IOException("Corrupt document snapshot, " + (stringCount - i - 1)
+                        + " strings do not fit into the string table");
+            }
+        }
+        if (stringsEnd - snapshot.position() >= Integer.BYTES) {
+            throw new IOException("Corrupt document snapshot, the string table is longer than its " + stringCount
+                    + " strings");
+        }
+        // the length is within the limit of the buffer, so all the positions fit into ints
+        int position = stringsEnd;
+        IntBuffer columns = slice(snapshot, position, (int) columnsLength).asIntBuffer();
+        position += (int) columnsLength;
+        IntBuffer packed = slice(snapshot, position, (int) packedBytes).asIntBuffer();
+        position += (int) packedBytes;
+        CharBuffer text = slice(snapshot, position, textLength * Character.BYTES).asCharBuffer();
+        ColumnarDocument document = new ColumnarDocument(size, columns, packed, strings, text, snapshot.isDirect());
+        document.checkColumns();
+        return document;
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int position, int length) {
+        ByteBuffer duplicate = buffer.duplicate();
+        duplicate.position(position);
+        duplicate.limit(position + length);
+        return duplicate.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static ByteBuffer allocate(int length) {
+        return ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static void writeFully(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.rewind();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * @return the length rounded up to a whole number of ints, so that the int arrays which follow are aligned
+     */
+    private static int align(int length) {
+        return (length + Integer.BYTES - 1) / Integer.BYTES * Integer.BYTES;
+    }
+}
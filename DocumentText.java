@@ -0,0 +1,126 @@
+package com.epam.healenium.treecomparing;
+
+/**
+ * The text of a whole document kept once: text nodes are appended in document order, separated by line separators.
+ * As the text nodes of a subtree are consecutive, the inner text of each element is a range of the document text,
+ * the same as joining its text nodes. Must not be modified once the nodes are built. The text may also be one kept
+ * elsewhere, e.g. the text of a {@link ColumnarDocument}, which is not appended to.
+ */
+final class DocumentText {
+
+    private static final String SEPARATOR = System.lineSeparator();
+
+    private final StringBuilder builder;
+    private final CharSequence text;
+    private int count;
+
+    DocumentText() {
+        this.builder = new StringBuilder();
+        this.text = builder;
+    }
+
+    /**
+     * @param text the text of a whole document kept elsewhere, which must not change
+     */
+    DocumentText(CharSequence text) {
+        this.builder = null;
+        this.text = text;
+    }
+
+    /**
+     * @param value a text node to append
+     */
+    void append(String value) {
+        if (count++ > 0) {
+            builder.append(SEPARATOR);
+        }
+        builder.append(value);
+    }
+
+    /**
+     * @return the length of the appended text
+     */
+    int length() {
+        return text.length();
+    }
+
+    /**
+     * @return the number of appended text nodes
+     */
+    int count() {
+        return count;
+    }
+
+    /**
+     * @param length the length of the text when an element started
+     * @param count  the number of text nodes when an element started
+     * @return the start of the inner text of the element, the current length is its end
+     */
+    int start(int length, int count) {
+        return count == 0 || count == this.count ? length : length + SEPARATOR.length();
+    }
+
+    /**
+     * @return the chars of the text, which must not be modified
+     */
+    CharSequence chars() {
+        return text;
+    }
+
+    String substring(int start, int end) {
+        return text.subSequence(start, end).toString();
+    }
+
+    /**
+     * @return a view of the range which doesn't copy the chars
+     */
+    CharSequence subSequence(int start, int end) {
+        return new Range(start, end);
+    }
+
+    /**
+     * Releases the spare capacity once the whole document is appended
+     */
+    void trimToSize() {
+        if (builder != null) {
+            builder.trimToSize();
+        }
+    }
+
+    private final class Range implements CharSequence {
+
+        private final int start;
+        private final int end;
+
+        Range(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public int length() {
+            return end - start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= end - start) {
+                throw new StringIndexOutOfBoundsException(index);
+            }
+            return text.charAt(start + index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            if (start < 0 || end > length() || start > end) {
+                throw new StringIndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length());
+            }
+            return new Range(this.start + start, this.start + end);
+        }
+
+        @Override
+        public String toString() {
+            return substring(start, end);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.epam.healenium.treecomparing;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Inverted index of the nodes of a {@link PreparedDocument} by their features: tag, id, each class and each pair of
+ * other attribute name and value. It gives the nodes which share at least one feature with the searched node, the
+ * rest of nodes most likely score low. The features are compared ignoring case, as the node distance does, and are
+ * hashed, so a rare collision may only add a node. Immutable.
+ */
+final class FeatureIndex {
+
+    private static final long TAG = 1;
+    private static final long ID = 2;
+    private static final long CLASS = 3;
+    private static final long ATTRIBUTE = 4;
+    private static final int[] NONE = new int[0];
+
+    private final Map<Long, int[]> positions = new HashMap<>();
+
+    FeatureIndex(PreparedDocument document) {
+        Map<Long, Postings> postings = new HashMap<>();
+        for (int i = 0; i < document.size(); i++) {
+            Node node = document.getNode(i);
+            add(postings, feature(TAG, node.getTag()), i);
+            if (node.getId() != null && !node.getId().isEmpty()) {
+                add(postings, feature(ID, node.getId()), i);
+            }
+            for (String value : node.getSortedClasses()) {
+                add(postings, feature(CLASS, value), i);
+            }
+            String[] names = node.getOtherAttributeNames();
+            String[] values = node.getOtherAttributeValues();
+            for (int j = 0; j < names.length; j++) {
+                add(postings, attribute(names[j], values[j]), i);
+            }
+        }
+        postings.forEach((feature, posting) -> positions.put(feature, posting.toArray()));
+    }
+
+    /**
+     * @return the positions of the nodes which share at least one feature with the searched node
+     */
+    BitSet candidates(PathQuery query) {
+        Node node = query.getNode();
+        BitSet candidates = new BitSet();
+        mark(candidates, feature(TAG, node.getTag()));
+        if (node.getId() != null && !node.getId().isEmpty()) {
+            mark(candidates, feature(ID, node.getId()));
+        }
+        for (String value : query.getClasses()) {
+            mark(candidates, feature(CLASS, value));
+        }
+        String[] names = node.getOtherAttributeNames();
+        String[] values = node.getOtherAttributeValues();
+        for (int j = 0; j < names.length; j++) {
+            mark(candidates, attribute(names[j], values[j]));
+        }
+        return candidates;
+    }
+
+    private void mark(BitSet candidates, long feature) {
+        for (int position : positions.getOrDefault(feature, NONE)) {
+            candidates.set(position);
+        }
+    }
+
+    private static void add(Map<Long, Postings> postings, long feature, int position) {
+        postings.computeIfAbsent(feature, key -> new Postings()).add(position);
+    }
+
+    private static long feature(long kind, String value) {
+        return Fingerprints.mix(kind, lowerCaseHash(value));
+    }
+
+    private static long attribute(String name, String value) {
+        return Fingerprints.mix(feature(ATTRIBUTE, name), lowerCaseHash(value));
+    }
+
+    /**
+     * @return FNV-1a hash of the lower case of each char
+     */
+    private static long lowerCaseHash(String value) {
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; value != null && i < value.length(); i++) {
+            hash = (hash ^ Character.toLowerCase(value.charAt(i))) * 0x100000001B3L;
+        }
+        return hash;
+    }
+
+    /**
+     * The growing list of positions of the nodes of a feature
+     */
+    static final class Postings {
+
+        private int[] positions = new int[4];
+        private int size;
+
+        void add(int position) {
+            if (size == positions.length) {
+                positions = Arrays.copyOf(positions, size * 2);
+            }
+            positions[size++] = position;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(positions, size);
+        }
+    }
+}
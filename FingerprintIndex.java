@@ -0,0 +1,31 @@
+package com.epam.healenium.treecomparing;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The positions of the nodes of a {@link PreparedDocument} by the fingerprints of their content, see
+ * {@link Fingerprints}. Built in a single pass over the document. Immutable.
+ */
+final class FingerprintIndex {
+
+    private static final int[] NONE = new int[0];
+
+    private final Map<Long, int[]> positions = new HashMap<>();
+
+    FingerprintIndex(PreparedDocument document) {
+        Map<Long, FeatureIndex.Postings> postings = new HashMap<>();
+        for (int i = 0; i < document.size(); i++) {
+            postings.computeIfAbsent(document.getFingerprint(i), key -> new FeatureIndex.Postings()).add(i);
+        }
+        postings.forEach((fingerprint, posting) -> positions.put(fingerprint, posting.toArray()));
+    }
+
+    /**
+     * @return the positions of the nodes of the fingerprint in document order, which content is most likely but not
+     *         necessarily the same
+     */
+    int[] get(long fingerprint) {
+        return positions.getOrDefault(fingerprint, NONE);
+    }
+}
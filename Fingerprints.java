@@ -0,0 +1,89 @@
+package com.epam.healenium.treecomparing;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * 64 bit hashes of the content of {@link Node}s: tag, id, classes, other attributes and inner text, but not the
+ * position in the tree. Nodes of equal content have equal fingerprints, see {@link #equalContent(Node, Node)}.
+ */
+final class Fingerprints {
+
+    private static final long NULL = 0x5BD1E9955BD1E995L;
+
+    private Fingerprints() {
+    }
+
+    /**
+     * @return the fingerprint of the content of the node
+     */
+    static long of(Node node) {
+        long hash = mix(hash(node.getTag()), hash(node.getId()));
+        String[] classes = node.getSortedClasses();
+        hash = mix(hash, classes.length);
+        for (String value : classes) {
+            hash = mix(hash, hash(value));
+        }
+        String[] names = node.getOtherAttributeNames();
+        String[] values = node.getOtherAttributeValues();
+        hash = mix(hash, names.length);
+        for (int i = 0; i < names.length; i++) {
+            hash = mix(mix(hash, hash(names[i])), hash(values[i]));
+        }
+        return mix(hash, hash(node.getInnerTextView()));
+    }
+
+    /**
+     * @return true if the nodes have the same tag, id, classes, other attributes and inner text
+     */
+    static boolean equalContent(Node left, Node right) {
+        return Objects.equals(left.getTag(), right.getTag())
+                && Objects.equals(left.getId(), right.getId())
+                && Arrays.equals(left.getSortedClasses(), right.getSortedClasses())
+                && Arrays.equals(left.getOtherAttributeNames(), right.getOtherAttributeNames())
+                && Arrays.equals(left.getOtherAttributeValues(), right.getOtherAttributeValues())
+                && contentEquals(left.getInnerTextView(), right.getInnerTextView());
+    }
+
+    /**
+     * @return the hash combined with the value, the order of values matters
+     */
+    static long mix(long hash, long value) {
+        hash ^= value * 0x9E3779B97F4A7C15L;
+        hash = Long.rotateLeft(hash, 31) * 0xC2B2AE3D27D4EB4FL;
+        return hash ^ (hash >>> 29);
+    }
+
+    /**
+     * @return FNV-1a hash of the chars
+     */
+    static long hash(CharSequence value) {
+        return value == null ? NULL : hash(value, 0, value.length());
+    }
+
+    /**
+     * @return FNV-1a hash of the chars in [start, end), the same as of a sequence of just these chars
+     */
+    static long hash(CharSequence value, int start, int end) {
+        long hash = 0xCBF29CE484222325L;
+        for (int i = start; i < end; i++) {
+            hash = (hash ^ value.charAt(i)) * 0x100000001B3L;
+        }
+        return hash;
+    }
+
+    private static boolean contentEquals(CharSequence left, CharSequence right) {
+        if (left == null || right == null) {
+            return left == right;
+        }
+        if (left.length() != right.length()) {
+            return false;
+        }
+        for (int i = 0; i < left.length(); i++) {
+            if (left.charAt(i) != right.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -1,10 +1,9 @@
 package com.epam.healenium.treecomparing;
 
 import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.text.similarity.LevenshteinDistance;
 
+import java.util.Arrays;
 import java.util.Objects;
-import java.util.Set;
 
 public class HeuristicNodeDistance implements NodeDistance {
 
@@ -15,9 +14,21 @@ public class HeuristicNodeDistance implements NodeDistance {
     private static final double POINTS_FOR_VALUE = 30.0;
     private static final double POINTS_FOR_INDEX = 0;
     private static final double POINTS_FOR_OTHER_ATTRIBUTE = 30.0;
+    private static final double MAXIMUM_SCORE = POINTS_FOR_TAG +
+            POINTS_FOR_ID +
+            POINTS_FOR_INDEX +
+            POINTS_FOR_VALUE +
+            POINTS_FOR_LCS +
+            POINTS_FOR_CLASS +
+            POINTS_FOR_OTHER_ATTRIBUTE;
 
     @Override
     public double distance(Node node1, Node node2, int LCSDistance, int curPathHeight) {
+        return distance(new PathQuery(new Path(node1)), node2, LCSDistance, curPathHeight);
+    }
+
+    @Override
+    public double distance(PathQuery query, Node node2, int LCSDistance, int curPathHeight) {
         double score = 0;
         if (curPathHeight == 0 || (curPathHeight > 5 && (double)LCSDistance / curPathHeight < 0.7)){
             return 0.0;
@@ -26,82 +37,129 @@ public class HeuristicNodeDistance implements NodeDistance {
             score += (double)LCSDistance / curPathHeight * POINTS_FOR_LCS;
         }
 
-        Set<String> propertyNames = Utils.union(node1.getOtherAttributes().keySet(), node2.getOtherAttributes().keySet());
-        Set<String> classNames = Utils.union(node1.getClasses(), node2.getClasses());
-        double maximumScore = POINTS_FOR_TAG +
-                POINTS_FOR_ID +
-                POINTS_FOR_INDEX +
-                POINTS_FOR_VALUE +
-                POINTS_FOR_LCS +
-                POINTS_FOR_CLASS +
-                POINTS_FOR_OTHER_ATTRIBUTE;
-
-        if (Stri
-        ngUtils.equalsIgnoreCase(node1.getTag(), node2.getTag())) {
+        Node node1 = query.getNode();
+        if (StringUtils.equalsIgnoreCase(node1.getTag(), node2.getTag())) {
             score += POINTS_FOR_TAG;
         }
         if (Objects.equals(node1.getIndex(), node2.getIndex())) {
             score += POINTS_FOR_INDEX;
         }
         if (node1.getId() != null && node2.getId() != null) {
-            score += POINTS_FOR_ID * calculateLevenshteinScore(node1.getId(), node2.getId(), 0.3);
+            score += POINTS_FOR_ID * calculateLevenshteinScore(query.getLowerCaseId(), node2.getId(), 0.3);
         }
-        score += POINTS_FOR_VALUE * calculateLevenshteinScore(node1.getInnerText(), node2.getInnerText(), 0.3);
+        score += POINTS_FOR_VALUE * calculateLevenshteinScore(query.getLowerCaseInnerText(), node2.getInnerTextView(), 0.3);
 
-        Set<String> classesIntersect = Utils.intersect(node1.getClasses(), node2.getClasses());
-        double intersectScore = classesIntersect.size() * POINTS_FOR_CLASS;
-        if (classNames.size() > 0) {
-            intersectScore /= classNames.size();
+        String[] classes1 = query.getClasses();
+        String[] classes2 = node2.getSortedClasses();
+        int classesIntersect = 0;
+        for (int i = 0, j = 0; i < classes1.length && j < classes2.length; ) {
+            int comparison = classes1[i].compareTo(classes2[j]);
+            if (comparison == 0) {
+                classesIntersect++;
+            }
+            if (comparison <= 0) {
+                i++;
+            }
+            if (comparison >= 0) {
+                j++;
+            }
+        }
+        int classNames = classes1.length + classes2.length - classesIntersect;
+        double intersectScore = classesIntersect * POINTS_FOR_CLASS;
+        if (classNames > 0) {
+            intersectScore /= classNames;
             score += intersectScore;
         }
         else {
             score += POINTS_FOR_CLASS;
         }
 
-        Set<String> node1classesDifference = Utils.difference(node1.getClasses(), node2.getClasses());
-        Set<String> node2classesDifference = Utils.difference(node2.getClasses(), node1.getClasses());
-        int lengthDifference = Utils.union(node1classesDifference, node2classesDifference).size();
+        int node1classesDifference = classes1.length - classesIntersect;
+        int node2classesDifference = classes2.length - classesIntersect;
+        int lengthDifference = node1classesDifference + node2classesDifference;
         if (lengthDifference > 0) {
-            double classesScore = 0;
-            if (node1classesDifference.size() > 0){
-                classesScore = calculateClassesIntersectionByLevenshtein(
-                        node1classesDifference, node2.getClasses()
-                );
-            }
-            else {
-                classesScore = calculateClassesIntersectionByLevenshtein(
-                        node1.getClasses(), node2classesDifference
-                );
-            }
-            if (classNames.size() > 0) {
-                classesScore /= classNames.size();
+            double classesScore = calculateClassesIntersectionByLevenshtein(query, classes2, node1classesDifference > 0);
+            if (classNames > 0) {
+                classesScore /= classNames;
             }
             score += lengthDifference * POINTS_FOR_CLASS * classesScore;
         }
+
+        String[] propertyNames1 = query.getOtherAttributeNames();
+        String[] propertyValues1 = query.getLowerCaseOtherAttributeValues();
+        String[] propertyNames2 = node2.getOtherAttributeNames();
+        String[] propertyValues2 = node2.getOtherAttributeValues();
+        int commonPropertyNames = 0;
         double otherAttributesScore = 0;
-        for (String propertyName : propertyNames) {
-            otherAttributesScore += POINTS_FOR_OTHER_ATTRIBUTE * calculateLevenshteinScore(
-                    node1.getOtherAttributes().get(propertyName),
-                    node2.getOtherAttributes().get(propertyName),
-                    0.75);
-        }
-        if (propertyNames.size() > 0) {
-            otherAttributesScore /= propertyNames.size();
+        for (int i = 0, j = 0; i < propertyNames1.length && j < propertyNames2.length; ) {
+            int comparison = propertyNames1[i].compareTo(propertyNames2[j]);
+            if (comparison == 0) {
+                commonPropertyNames++;
+                otherAttributesScore += POINTS_FOR_OTHER_ATTRIBUTE * calculateLevenshteinScore(
+                        propertyValues1[i],
+                        propertyValues2[j],
+                        0.75);
+            }
+            if (comparison <= 0) {
+                i++;
+            }
+            if (comparison >= 0) {
+                j++;
+            }
+        }
+        int propertyNames = propertyNames1.length + propertyNames2.length - commonPropertyNames;
+        if (propertyNames > 0) {
+            otherAttributesScore /= propertyNames;
             score += otherAttributesScore;
         }
         else {
             score += POINTS_FOR_OTHER_ATTRIBUTE;
         }
 
-        return score / maximumScore;
+        return score / MAXIMUM_SCORE;
     }
 
-    private double calculateClassesIntersectionByLevenshtein(Set<String> nodeClasses1, Set<String> nodeClasses2) {
+    /**
+     * The best score is reached by a node with the same tag, id, inner text, classes and attributes, so only the LCS
+     * part of the score depends on the given node pair.
+     */
+    @Override
+    public double maxDistance(int LCSDistance, int curPathHeight) {
+        if (curPathHeight == 0 || (curPathHeight > 5 && (double)LCSDistance / curPathHeight < 0.7)){
+            return 0.0;
+        }
+        double score = (double)LCSDistance / curPathHeight * POINTS_FOR_LCS +
+                POINTS_FOR_TAG +
+                POINTS_FOR_ID +
+                POINTS_FOR_INDEX +
+                POINTS_FOR_VALUE +
+                POINTS_FOR_CLASS +
+                POINTS_FOR_OTHER_ATTRIBUTE;
+        // the margin covers rounding of the score accumulated by distance
+        return score / MAXIMUM_SCORE + 1e-9;
+    }
+
+    /**
+     * @param query         the searched node
+     * @param nodeClasses2  sorted classes of the compared node
+     * @param byDifference1 true to compare classes missing in the compared node with all of its classes,
+     *                      false to compare all the searched classes with the ones missing in the searched node
+     * @return the average similarity of compared class pairs
+     */
+    private double calculateClassesIntersectionByLevenshtein(PathQuery query, String[] nodeClasses2, boolean byDifference1) {
+        String[] nodeClasses1 = query.getClasses();
+        String[] lowerCaseClasses1 = query.getLowerCaseClasses();
         int comparisonsNumber = 0;
         double scores = 0;
-        for (String classNameFirst : nodeClasses1) {
+        for (int i = 0; i < nodeClasses1.length; i++) {
+            if (byDifference1 && Arrays.binarySearch(nodeClasses2, nodeClasses1[i]) >= 0) {
+                continue;
+            }
             for (String classNameSecond : nodeClasses2) {
-                scores += calculateLevenshteinScore(classNameFirst, classNameSecond, 0.75);
+                if (!byDifference1 && Arrays.binarySearch(nodeClasses1, classNameSecond) >= 0) {
+                    continue;
+                }
+                scores += calculateLevenshteinScore(lowerCaseClasses1[i], classNameSecond, 0.75);
                 comparisonsNumber += 1;
             }
         }
@@ -111,24 +169,26 @@ public class HeuristicNodeDistance implements NodeDistance {
         return scores / comparisonsNumber;
     }
 
-    private double calculateLevenshteinScore(String innerText1, String innerText2, double thresholdPercent) {
+    private double calculateLevenshteinScore(CharSequence innerText1, CharSequence innerText2, double thresholdPercent) {
         if (innerText1 == null || innerText2 == null) {
             return 0;
         }
-        innerText1 = innerText1.toLowerCase();
-        innerText2 = innerText2.toLowerCase();
+        boolean ignoreCase = BoundedLevenshteinDistance.isCharWiseLowerCase(innerText1)
+                && BoundedLevenshteinDistance.isCharWiseLowerCase(innerText2);
+        if (!ignoreCase) {
+            innerText1 = innerText1.toString().toLowerCase();
+            innerText2 = innerText2.toString().toLowerCase();
+        }
         int length = Math.max(innerText1.length(), innerText2.length());
         if (length == 0) {
             return 1;
         }
         int threshold = calculateLevenshteinThreshold(length, thresholdPercent);
-        LevenshteinDistance levenshtein = new LevenshteinDistance(threshold);
-
-        Integer distance = levenshtein.apply(innerText1, innerText2);
+        int distance = BoundedLevenshteinDistance.apply(innerText1, innerText2, threshold, ignoreCase);
         if (distance < 0) {
             return 0;
         }
-        return (length - distance.doubleValue()) / length;
+        return (length - (double) distance) / length;
     }
 
     /**
@@ -0,0 +1,397 @@
+package com.epam.healenium.treecomparing;
+
+import org.jsoup.parser.Parser;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Splits an html page into tags and text runs and passes them to a {@link Handler} as they are read, nothing is
+ * retained. Tag and attribute names are in lower case, duplicate attributes are dropped, character references are
+ * decoded the same way as Jsoup does. Comments, doctypes, processing instructions and script data are skipped.
+ */
+final class HtmlTokenizer {
+
+    /**
+     * Content models of an element, i.e. how the content after its start tag is read
+     */
+    static final int DATA = 0;
+    static final int RCDATA = 1;
+    static final int RAWTEXT = 2;
+    static final int SCRIPT_DATA = 3;
+    static final int PLAINTEXT = 4;
+    /**
+     * Flag of a content model to skip a new line right after the start tag
+     */
+    static final int SKIP_NEWLINE = 8;
+
+    interface Handler {
+
+        /**
+         * @param name            the tag name
+         * @param attributeNames  the names of the first attributeCount attributes as written, unique ignoring case,
+         *                        reused by the next tags
+         * @param attributeValues the values of the first attributeCount attributes, reused by the next tags
+         * @param attributeCount  the number of attributes
+         * @param selfClosing     true if the tag ends with "/>"
+         * @return the content model to read the content of the element with
+         */
+        int startTag(String name, String[] attributeNames, String[] attributeValues, int attributeCount,
+                     boolean selfClosing);
+
+        void endTag(String name);
+
+        /**
+         * @param text  a run of text between tags and comments, not normalized
+         * @param cdata true for the content of a CDATA section
+         */
+        void text(String text, boolean cdata);
+    }
+
+    private final char[] chars;
+    private final int length;
+    private final Handler handler;
+    private final StringBuilder text = new StringBuilder();
+    private String[] attributeNames = new String[8];
+    private String[] attributeValues = new String[8];
+    private int position;
+
+    HtmlTokenizer(char[] chars, int length, Handler handler) {
+        this.chars = chars;
+        this.length = length;
+        this.handler = handler;
+        if (length > 0 && chars[0] == '\uFEFF') {
+            position = 1;
+        }
+    }
+
+    /**
+     * Reads the whole page
+     */
+    void run() {
+        while (position < length) {
+            char c = chars[position];
+            if (c != '<' || position + 1 >= length) {
+                text.append(c);
+                position++;
+                continue;
+            }
+            char next = chars[position + 1];
+            if (isAsciiLetter(next)) {
+                flushText();
+                readStartTag();
+            } else if (next == '/') {
+                if (position + 2 < length && isAsciiLetter(chars[position + 2])) {
+                    flushText();
+                    readEndTag();
+                } else if (position + 2 < length && chars[position + 2] == '>') {
+                    position += 3;
+                } else if (position + 2 >= length) {
+                    text.append("</");
+                    position += 2;
+                } else {
+                    flushText();
+                    skipBogusComment(position + 2);
+                }
+            } else if (next == '!') {
+                flushText();
+                readMarkupDeclaration();
+            } else if (next == '?') {
+                flushText();
+                skipBogusComment(position + 1);
+            } else {
+                text.append(c);
+                position++;
+            }
+        }
+        flushText();
+    }
+
+    private void readStartTag() {
+        int start = ++position;
+        while (position < length && !isWhitespace(chars[position]) && chars[position] != '/' && chars[position] != '>') {
+            position++;
+        }
+        String name = lowerCase(start, position);
+        int attributeCount = 0;
+        boolean selfClosing = false;
+        while (true) {
+            while (position < length && (isWhitespace(chars[position]) || chars[position] == '/')) {
+                if (chars[position] == '/' && position + 1 < length && chars[position + 1] == '>') {
+                    selfClosing = true;
+                }
+                position++;
+            }
+            if (position >= length) {
+                // a tag cut by the end of the page is dropped
+                return;
+            }
+            if (chars[position] == '>') {
+                position++;
+                break;
+            }
+            selfClosing = false;
+            int nameStart = position++;
+            while (position < length && !isWhitespace(chars[position]) && chars[position] != '/'
+                    && chars[position] != '>' && chars[position] != '=') {
+                position++;
+            }
+            String attributeName = new String(chars, nameStart, position - nameStart);
+            while (position < length && isWhitespace(chars[position])) {
+                position++;
+            }
+            String attributeValue = "";
+            if (position < length && chars[position] == '=') {
+                position++;
+                while (position < length && isWhitespace(chars[position])) {
+                    position++;
+                }
+                attributeValue = readAttributeValue();
+                if (attributeValue == null) {
+                    return;
+                }
+            }
+            if (attributeIndex(attributeName, attributeCount) < 0) {
+                if (attributeCount == attributeNames.length) {
+                    attributeNames = Arrays.copyOf(attributeNames, attributeCount * 2);
+                    attributeValues = Arrays.copyOf(attributeValues, attributeCount * 2);
+                }
+                attributeNames[attributeCount] = attributeName;
+                attributeValues[attributeCount++] = attributeValue;
+            }
+        }
+        int contentModel = handler.startTag(name, attributeNames, attributeValues, attributeCount, selfClosing);
+        // as in Jsoup, the new line is skipped even after a self closing tag
+        if ((contentModel & SKIP_NEWLINE) != 0 && position < length && chars[position] == '\n') {
+            position++;
+        }
+        // a self closing tag has no content, but Jsoup reads the rest of the page as text after a plaintext one
+        if (!selfClosing || contentModel == PLAINTEXT) {
+            readContent(name, contentModel & ~SKIP_NEWLINE);
+        }
+    }
+
+    /**
+     * @return the value, or null if the page ends before it
+     */
+    private String readAttributeValue() {
+        if (position >= length) {
+            return null;
+        }
+        char quote = chars[position];
+        int start;
+        int end;
+        if (quote == '"' || quote == '\'') {
+            start = ++position;
+            while (position < length && chars[position] != quote) {
+                position++;
+            }
+            if (position >= length) {
+                return null;
+            }
+            end = position++;
+        } else {
+            start = position;
+            while (position < length && !isWhitespace(chars[position]) && chars[position] != '>') {
+                position++;
+            }
+            end = position;
+        }
+        return decode(new String(chars, start, end - start), true);
+    }
+
+    private void readContent(String name, int contentModel) {
+        if (contentModel == DATA) {
+            return;
+        }
+        if (contentModel == PLAINTEXT) {
+            if (position < length) {
+                handler.text(new String(chars, position, length - position), false);
+                position = length;
+            }
+            return;
+        }
+        int end = findEndTag(name);
+        int startTag = contentModel == RCDATA ? findUnclosedStartTag(name, end) : -1;
+        if (startTag >= 0) {
+            if (startTag > position) {
+                handler.text(decode(new String(chars, position, startTag - position), false), false);
+            }
+            position = startTag;
+            handler.endTag(name);
+            return;
+        }
+        if (end > position) {
+            String content = new String(chars, position, end - position);
+            if (contentModel == RCDATA) {
+                handler.text(decode(content, false), false);
+            } else if (contentModel == RAWTEXT) {
+                handler.text(content, false);
+            }
+        }
+        position = end;
+    }
+
+    /**
+     * @return the position of the end tag of a raw text element, or the end of the page
+     */
+    private int findEndTag(String name) {
+        for (int i = position; i + name.length() + 2 <= length; i++) {
+            if (chars[i] != '<' || chars[i + 1] != '/') {
+                continue;
+            }
+            int after = i + 2 + name.length();
+            if (startsWithIgnoreCase(i + 2, name)
+                    && (after == length || isWhitespace(chars[after]) || chars[after] == '/' || chars[after] == '>')) {
+                return i;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Jsoup diverges from the spec here: an RCDATA element, e.g. a title or a textarea, is ended right before a start
+     * tag if its end tag in lower or in upper case is not found anywhere after the start tag, instead of reading the
+     * rest of the page as its text.
+     *
+     * @param end the position of the end tag of the element, or the end of the page
+     * @return the position of the start tag the element is ended before, or -1
+     */
+    private int findUnclosedStartTag(String name, int end) {
+        int last = Math.max(lastIndexOf("</" + name), lastIndexOf("</" + name.toUpperCase(Locale.ENGLISH)));
+        for (int i = Math.max(position, last + 1); i + 1 < end; i++) {
+            if (chars[i] == '<' && isAsciiLetter(chars[i + 1])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void readEndTag() {
+        position += 2;
+        int start = position;
+        while (position < length && !isWhitespace(chars[position]) && chars[position] != '/' && chars[position] != '>') {
+            position++;
+        }
+        String name = lowerCase(start, position);
+        while (position < length && chars[position] != '>') {
+            char quote = chars[position++];
+            if (quote == '"' || quote == '\'') {
+                while (position < length && chars[position] != quote) {
+                    position++;
+                }
+                position++;
+            }
+        }
+        if (position >= length) {
+            return;
+        }
+        position++;
+        handler.endTag(name);
+    }
+
+    private void readMarkupDeclaration() {
+        int start = position + 2;
+        if (startsWith(start, "--")) {
+            int end = indexOf("-->", start + 2);
+            if (startsWith(start + 2, ">")) {
+                position = start + 3;
+            } else if (startsWith(start + 2, "->")) {
+                position = start + 4;
+            } else {
+                position = end < 0 ? length : end + 3;
+            }
+        } else if (startsWith(start, "[CDATA[")) {
+            int end = indexOf("]]>", start + 7);
+            int contentEnd = end < 0 ? length : end;
+            if (contentEnd > start + 7) {
+                handler.text(new String(chars, start + 7, contentEnd - start - 7), true);
+            }
+            position = end < 0 ? length : end + 3;
+        } else {
+            skipBogusComment(start);
+        }
+    }
+
+    private void skipBogusComment(int start) {
+        int end = indexOf(">", start);
+        position = end < 0 ? length : end + 1;
+    }
+
+    private void flushText() {
+        if (text.length() > 0) {
+            handler.text(decode(text.toString(), false), false);
+            text.setLength(0);
+        }
+    }
+
+    private int attributeIndex(String attributeName, int attributeCount) {
+        for (int i = 0; i < attributeCount; i++) {
+            if (attributeNames[i].equalsIgnoreCase(attributeName)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int indexOf(String value, int from) {
+        for (int i = from; i + value.length() <= length; i++) {
+            if (startsWith(i, value)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the position of the last occurrence of the value at the current position or after it, or -1
+     */
+    private int lastIndexOf(String value) {
+        for (int i = length - value.length(); i >= position; i--) {
+            if (startsWith(i, value)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean startsWith(int from, String value) {
+        if (from + value.length() > length) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (chars[from + i] != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean startsWithIgnoreCase(int from, String value) {
+        if (from + value.length() > length) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (Character.toLowerCase(chars[from + i]) != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String lowerCase(int start, int end) {
+        return new String(chars, start, end - start).toLowerCase(Locale.ENGLISH);
+    }
+
+    private static String decode(String value, boolean inAttribute) {
+        return value.indexOf('&') < 0 ? value : Parser.unescapeEntities(value, inAttribute);
+    }
+
+    private static boolean isAsciiLetter(char c) {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z';
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+    }
+}
@@ -0,0 +1,79 @@
+package com.epam.healenium.treecomparing;
+
+import java.io.InputStream;
+
+/**
+ * Parser of consecutive versions of a page, which keeps the {@link Node}s of the previous version wherever the page
+ * has not changed. The nodes of a subtree survive with everything derived from them, e.g. a {@link PathQuery} of a
+ * path through them or per node data kept in identity maps.
+ * <p>
+ * The new version is read by a streaming parser, which looks each element up in the previous version once it is
+ * closed: a leaf by the hash of its content, an element with children as the previous parent of all of them. So the
+ * nodes of an unchanged subtree are never built, only the nodes of the changed elements and their ancestors are. The
+ * nodes of the previous version keep their content, only the roots of the reused subtrees get the parent of the new
+ * version, so the previous result must not be used as a tree anymore once it is passed as the previous one. The
+ * reused nodes keep the text of the version they were built of, which stays retained while they are in use.
+ * <p>
+ * A page which {@link StreamingHTMLParser} leaves to Jsoup is parsed as a new one, with no nodes reused, as is a page
+ * source which hierarchy element is not the document element, see {@link StreamingXMLParser}.
+ */
+public class IncrementalDocumentParser implements DocumentParser {
+
+    private final VersionParser parser;
+
+    public IncrementalDocumentParser() {
+        this(new StreamingHTMLParser());
+    }
+
+    /**
+     * @param parser the parser of html pages
+     */
+    public IncrementalDocumentParser(StreamingHTMLParser parser) {
+        this.parser = parser::parse;
+    }
+
+    /**
+     * @param parser the parser of xml page sources
+     */
+    public IncrementalDocumentParser(StreamingXMLParser parser) {
+        this.parser = parser::parse;
+    }
+
+    @Override
+    public Node parse(InputStream inputStream) {
+        return parser.parse(inputStream, null);
+    }
+
+    /**
+     * @param inputStream the new version of the page
+     * @param previous    the result of the previous version, or null
+     * @return the tree of the new version with the unchanged subtrees of the previous one
+     * @throws IllegalStateException if the previous result was already passed as a previous one
+     */
+    public IncrementalParseResult parse(InputStream inputStream, IncrementalParseResult previous) {
+        if (previous == null) {
+            Node root = parser.parse(inputStream, null);
+            return new IncrementalParseResult(root, 0, 0, (int) CachingDocumentParser.countNodes(root));
+        }
+        previous.markSpliced();
+        PreviousVersion previousVersion = new PreviousVersion(previous.getRoot());
+        Node root;
+        try {
+            root = parser.parse(inputStream, previousVersion);
+        } catch (RuntimeException e) {
+            previousVersion.restore();
+            throw e;
+        }
+        root.setParent(null);
+        return new IncrementalParseResult(root, previousVersion.getTakenSubtreeCount(),
+                previousVersion.getTakenNodeCount(), (int) CachingDocumentParser.countNodes(root));
+    }
+
+    /**
+     * The parse method of a streaming parser, which takes the nodes of the previous version if given
+     */
+    private interface VersionParser {
+
+        Node parse(InputStream inputStream, PreviousVersion previous);
+    }
+}
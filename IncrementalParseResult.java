@@ -0,0 +1,43 @@
+package com.epam.healenium.treecomparing;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+
+/**
+ * The tree of a document parsed against its previous version, see {@link IncrementalDocumentParser}
+ */
+@Getter
+@RequiredArgsConstructor(access = AccessLevel.PACKAGE)
+@ToString
+public class IncrementalParseResult {
+
+    private final Node root;
+    /**
+     * The number of subtrees of the previous version spliced into the tree
+     */
+    private final int reusedSubtreeCount;
+    /**
+     * The number of nodes in those subtrees
+     */
+    private final int reusedNodeCount;
+    /**
+     * The number of nodes in the tree
+     */
+    private final int nodeCount;
+    /**
+     * True once the subtrees of the tree may be moved into the tree of a newer version
+     */
+    @Getter(AccessLevel.NONE)
+    @ToString.Exclude
+    private boolean spliced;
+
+    synchronized void markSpliced() {
+        if (spliced) {
+            throw new IllegalStateException("The result was already passed as a previous one, its subtrees may have "
+                    + "been moved");
+        }
+        spliced = true;
+    }
+}
@@ -0,0 +1,36 @@
+package com.epam.healenium.treecomparing;
+
+/**
+ * A {@link PathDistance} which can be evaluated for a path growing and shrinking by one node at its end.
+ * It allows to compare the searched path with all the paths of a tree during depth-first traversal, so that
+ * the common prefix of sibling paths is processed only once.
+ */
+public interface IncrementalPathDistance extends PathDistance {
+
+    /**
+     * @param path the path which all the visited paths will be compared with
+     * @return a cursor positioned at an empty path
+     */
+    Cursor cursor(Path path);
+
+    /**
+     * A mutable state of comparison of the given path with the current one. Not thread safe.
+     */
+    interface Cursor {
+
+        /**
+         * @param node a node to be appended to the end of the current path
+         */
+        void push(Node node);
+
+        /**
+         * Removes the last node of the current path
+         */
+        void pop();
+
+        /**
+         * @return the same value as {@link PathDistance#distance(Path, Path)} for the given and the current paths
+         */
+        int distance();
+    }
+}
@@ -0,0 +1,32 @@
+package com.epam.healenium.treecomparing;
+
+import java.io.InputStream;
+
+/**
+ * Parser which reports the duration of each parse and the size of the tree to a {@link PathFinderListener}.
+ * Counting the nodes takes a walk through the tree. Thread safe if the delegate and the listener are.
+ */
+public class InstrumentedDocumentParser implements DocumentParser {
+
+    private final DocumentParser delegate;
+    private final PathFinderListener listener;
+
+    /**
+     * @param delegate the parser of the documents
+     * @param listener the listener to report the parse phase to
+     */
+    public InstrumentedDocumentParser(DocumentParser delegate, PathFinderListener listener) {
+        this.delegate = delegate;
+        this.listener = listener;
+    }
+
+    @Override
+    public Node parse(InputStream inputStream) {
+        listener.started(PathFinderListener.Phase.PARSED);
+        long start = System.nanoTime();
+        Node root = delegate.parse(inputStream);
+        long nanos = System.nanoTime() - start;
+        listener.parsed(nanos, (int) CachingDocumentParser.countNodes(root));
+        return root;
+    }
+}
@@ -8,9 +8,7 @@ import org.jsoup.nodes.TextNode;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.ArrayDeque;
 import java.util.Collections;
-import java.util.Deque;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -24,8 +22,10 @@ public class JsoupHTMLParser implements DocumentParser {
             Document document = Jsoup.parse(inputStream, "UTF-8", "/").normalise();
             org.jsoup.nodes.Node html = findHtml(Collections.singletonList(document.root()));
             int startIndex = 0;
-            Deque<NodeBuilder> treeDepth = new ArrayDeque<>();
-            return traverse(html, startIndex, treeDepth);
+            DocumentText text = new DocumentText();
+            Node root = traverse(html, startIndex, text);
+            text.trimToSize();
+            return root;
         } catch (IOException e) {
             throw new IllegalStateException(e);
         }
@@ -35,10 +35,10 @@ public class JsoupHTMLParser implements DocumentParser {
      * Walkthrough entire DOM document with building full path, each node will be converted to the inner type
      * @param node - document
      * @param index - start index
-     * @param treeDepth - resulting path
+     * @param text - the text of the document, the inner text of each node is a range of it
      * @return
      */
-    private Node traverse(org.jsoup.nodes.Node node, Integer index, Deque<NodeBuilder> treeDepth) {
+    private Node traverse(org.jsoup.nodes.Node node, Integer index, DocumentText text) {
         Map<String, String> attributesMap = node.attributes().asList()
             .stream()
             .collect(Collectors.toMap(Attribute::getKey, Attribute::getValue));
@@ -48,22 +48,19 @@ public class JsoupHTMLParser implements DocumentParser {
             .setIndex(index)
             .setAttributes(attributesMap);
 
-        treeDepth.push(builder);
+        int textLength = text.length();
+        int textCount = text.count();
         int indexCounter = 0;
 
         for (org.jsoup.nodes.Node child : node.childNodes()) {
             if (child instanceof Element) {
-                builder.addChild(traverse(child, indexCounter++, treeDepth));
+                builder.addChild(traverse(child, indexCounter++, text));
             } else if (child instanceof TextNode) {
-                String text = ((TextNode) child).text();
-                for (NodeBuilder parentBuilder: treeDepth) {
-                    parentBuilder.addContent(text);
-                }
+                text.append(((TextNode) child).text());
             }
         }
 
-        treeDepth.pop();
-        return builder.build();
+        return builder.setText(text, text.start(textLength, textCount), text.length()).build();
     }
 
     /**
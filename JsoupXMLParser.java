@@ -3,9 +3,7 @@ package com.epam.healenium.treecomparing;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayDeque;
 import java.util.Collections;
-import java.util.Deque;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -25,14 +23,16 @@ public class JsoupXMLParser implements DocumentParser {
       Document document = Jsoup.parse(inputStream, StandardCharsets.UTF_8.toString(), "/", Parser.xmlParser()).normalise();
       org.jsoup.nodes.Node xml = findRoot(Collections.singletonList(document.root()));
       int startIndex = 0;
-      Deque<NodeBuilder> treeDepth = new ArrayDeque<>();
-      return traverse(xml, startIndex, treeDepth);
+      DocumentText text = new DocumentText();
+      Node root = traverse(xml, startIndex, text);
+      text.trimToSize();
+      return root;
     } catch (IOException e) {
       throw new IllegalStateException(e);
     }
   }
 
-  private Node traverse(org.jsoup.nodes.Node node, Integer index, Deque<NodeBuilder> treeDepth) {
+  private Node traverse(org.jsoup.nodes.Node node, Integer index, DocumentText text) {
     Map<String, String> attributesMap = node.attributes().asList()
         .stream()
         .collect(Collectors.toMap(Attribute::getKey, Attribute::getValue));
@@ -41,24 +41,22 @@ public class JsoupXMLParser implements DocumentParser {
         .setTag(node.nodeName())
         .setIndex(index)
         .setAttributes(attributesMap);
-    treeDepth.push(builder);
+    int textLength = text.length();
+    int textCount = text.count();
     int indexCounter = 0;
 
     for (org.jsoup.nodes.Node child : node.childNodes()) {
       if (child instanceof Element) {
-        builder.addChild(traverse(child, indexCounter++, treeDepth));
+        builder.addChild(traverse(child, indexCounter++, text));
       } else if (child instanceof TextNode) {
-        String text = ((TextNode) child).text();
-        if (!" ".equals(text)) {
-          for (NodeBuilder parentBuilder : treeDepth) {
-            parentBuilder.addContent(text);
-          }
+        String value = ((TextNode) child).text();
+        if (!" ".equals(value)) {
+          text.append(value);
         }
       }
     }
 
-    treeDepth.pop();
-    return builder.build();
+    return builder.setText(text, text.start(textLength, textCount), text.length()).build();
   }
 
   /**
@@ -1,16 +1,23 @@
 package com.epam.healenium.treecomparing;
 
+import java.util.Arrays;
+
 /**
  * Metric based on Longest common subsequence.
  * See https://en.wikipedia.org/wiki/Longest_common_subsequence_problem
  */
-public class LCSPathDistance implements PathDistance {
+public class LCSPathDistance implements IncrementalPathDistance {
 
     @Override
     public int distance(Path path1, Path path2) {
         return lcs(path1.getNodes(), path2.getNodes());
     }
 
+    @Override
+    public Cursor cursor(Path path) {
+        return new LCSCursor(path.getNodes());
+    }
+
     private int lcs(Node[] X, Node[] Y) {
         int m = X.length;
         int n = Y.length;
@@ -29,4 +36,59 @@ public class LCSPathDistance implements PathDistance {
         }
         return L[m][n];
     }
+
+    /**
+     * Keeps one column of the LCS table per node of the current path, i.e. L[*][j] for the path prefix of length j.
+     * Appending a node computes a single column out of the previous one, the nodes of the given path are compared
+     * by their hash codes first.
+     */
+    private static class LCSCursor implements Cursor {
+
+        private final Node[] X;
+        private final int[] hashCodes;
+        private int[][] columns;
+        private int depth;
+
+        LCSCursor(Node[] X) {
+            this.X = X;
+            this.hashCodes = new int[X.length];
+            for (int i = 0; i < X.length; i++) {
+                hashCodes[i] = X[i].hashCode();
+            }
+            this.columns = new int[16][];
+            this.columns[0] = new int[X.length + 1];
+        }
+
+        @Override
+        public void push(Node node) {
+            if (depth + 1 == columns.length) {
+                columns = Arrays.copyOf(columns, columns.length * 2);
+            }
+            int[] previous = columns[depth];
+            int[] current = columns[depth + 1];
+            if (current == null) {
+                current = new int[X.length + 1];
+                columns[depth + 1] = current;
+            }
+            int hashCode = node.hashCode();
+            for (int i = 1; i <= X.length; i++) {
+                if (hashCodes[i - 1] == hashCode && X[i - 1].equals(node)) {
+                    current[i] = previous[i - 1] + 1;
+                } else {
+                    current[i] = Math.max(current[i - 1], previous[i]);
+                }
+            }
+            depth++;
+        }
+
+        @Override
+        public void pop() {
+            depth--;
+        }
+
+        @Override
+        public int distance() {
+            return columns[depth][X.length];
+        }
+    }
 }
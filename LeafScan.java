@@ -0,0 +1,206 @@
+package com.epam.healenium.treecomparing;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Compares the searched paths with the path to each leaf of a {@link PreparedDocument} in one traversal. A leaf path
+ * with distance L puts its nodes from (L - 1) till the leaf into the candidates, every candidate gets the best
+ * distance among its leaves. If the path distance is an {@link IncrementalPathDistance}, the common prefix of leaf
+ * paths is evaluated once.
+ * <p>
+ * If a pool is given and the document is larger than the threshold, the document is split into tasks by subtrees.
+ */
+final class LeafScan {
+
+    private final Path[] paths;
+    private final PreparedDocument document;
+    private final PathDistance pathDistance;
+    private final ForkJoinPool forkJoinPool;
+    private final int parallelThreshold;
+    private final int[][] distances;
+
+    /**
+     * @param paths             the searched paths
+     * @param document          the document to search in
+     * @param pathDistance      an algorithm to evaluate node likeness by their path
+     * @param forkJoinPool      a pool to run the scan in, null to run it in the calling thread
+     * @param parallelThreshold the number of nodes which a task processes sequentially
+     */
+    LeafScan(List<PathQuery> paths, PreparedDocument document, PathDistance pathDistance, ForkJoinPool forkJoinPool,
+             int parallelThreshold) {
+        this.paths = new Path[paths.size()];
+        for (int i = 0; i < paths.size(); i++) {
+            this.paths[i] = paths.get(i).getPath();
+        }
+        this.document = document;
+        this.pathDistance = pathDistance;
+        this.forkJoinPool = document.size() > parallelThreshold ? forkJoinPool : null;
+        this.parallelThreshold = Math.max(parallelThreshold, 1);
+        this.distances = new int[paths.size()][document.size()];
+    }
+
+    /**
+     * @return for each path, the distance of each candidate by its position in the document, 0 for the rest of nodes
+     */
+    int[][] run() {
+        if (forkJoinPool != null) {
+            forkJoinPool.invoke(new LeafScanTask(0, document.size()));
+        } else {
+            findLCSDistances(0, document.size());
+        }
+        return distances;
+    }
+
+    /**
+     * Scans the sibling subtrees in [from, to)
+     *
+     * @param from the position of the first subtree
+     * @param to   the end of the last subtree
+     * @return for each path, the best distances of the common ancestors of the subtrees by their depth, as they are
+     *         out of the range
+     */
+    private int[][] findLCSDistances(int from, int to) {
+        IncrementalPathDistance.Cursor[] cursors = new IncrementalPathDistance.Cursor[paths.length];
+        for (int p = 0; p < paths.length; p++) {
+            cursors[p] = pathDistance instanceof IncrementalPathDistance
+                    ? ((IncrementalPathDistance) pathDistance).cursor(paths[p])
+                    : new RecomputingCursor(pathDistance, paths[p]);
+        }
+        int baseDepth = document.getDepth(from);
+        int[] ancestors = new int[baseDepth + 16];
+        for (int position = document.getParent(from), depth = baseDepth - 1; position >= 0; position = document.getParent(position)) {
+            ancestors[depth--] = position;
+        }
+        for (int depth = 0; depth < baseDepth; depth++) {
+            for (IncrementalPathDistance.Cursor cursor : cursors) {
+                cursor.push(document.getNode(ancestors[depth]));
+            }
+        }
+        int[][] ancestorDistances = new int[paths.length][baseDepth];
+        int depth = baseDepth - 1;
+        for (int i = from; i < to; i++) {
+            for (; depth >= document.getDepth(i); depth--) {
+                for (IncrementalPathDistance.Cursor cursor : cursors) {
+                    cursor.pop();
+                }
+            }
+            for (IncrementalPathDistance.Cursor cursor : cursors) {
+                cursor.push(document.getNode(i));
+            }
+            if (++depth == ancestors.length) {
+                ancestors = Arrays.copyOf(ancestors, depth * 2);
+            }
+            ancestors[depth] = i;
+            if (!document.isLeaf(i)) {
+                continue;
+            }
+            for (int p = 0; p < paths.length; p++) {
+                int distance = cursors[p].distance();
+                if (distance < 1) {
+                    continue;
+                }
+                for (int d = distance - 1; d <= depth; d++) {
+                    if (d < baseDepth) {
+                        ancestorDistances[p][d] = Math.max(ancestorDistances[p][d], distance);
+                    } else {
+                        distances[p][ancestors[d]] = Math.max(distances[p][ancestors[d]], distance);
+                    }
+                }
+            }
+        }
+        return ancestorDistances;
+    }
+
+    /**
+     * Scans the sibling subtrees in [from, to), splitting them into tasks by subtrees
+     */
+    private class LeafScanTask extends RecursiveTask<int[][]> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+
+        LeafScanTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected int[][] compute() {
+            if (to - from <= parallelThreshold) {
+                return findLCSDistances(from, to);
+            }
+            int baseDepth = document.getDepth(from);
+            if (document.getEnd(from) == to) {
+                // descend to the first node with more than one child, its ancestors get the distances of its subtrees
+                int root = from;
+                while (to - (root + 1) > parallelThreshold && document.getEnd(root + 1) == to) {
+                    root++;
+                }
+                int[][] subtreeDistances = new LeafScanTask(root + 1, to).compute();
+                for (int p = 0; p < paths.length; p++) {
+                    for (int position = from; position <= root; position++) {
+                        distances[p][position] = subtreeDistances[p][document.getDepth(position)];
+                    }
+                    subtreeDistances[p] = Arrays.copyOf(subtreeDistances[p], baseDepth);
+                }
+                return subtreeDistances;
+            }
+            int split = from;
+            while (document.getEnd(split) <= from + (to - from) / 2) {
+                split = document.getEnd(split);
+            }
+            if (split == from) {
+                split = document.getEnd(from);
+            }
+            LeafScanTask right = new LeafScanTask(split, to);
+            right.fork();
+            int[][] ancestorDistances = new LeafScanTask(from, split).compute();
+            int[][] rightDistances = right.join();
+            for (int p = 0; p < paths.length; p++) {
+                for (int depth = 0; depth < baseDepth; depth++) {
+                    ancestorDistances[p][depth] = Math.max(ancestorDistances[p][depth], rightDistances[p][depth]);
+                }
+            }
+            return ancestorDistances;
+        }
+    }
+
+    /**
+     * Fallback for path distances which can't be evaluated incrementally, computes each distance from scratch
+     */
+    private static class RecomputingCursor implements IncrementalPathDistance.Cursor {
+
+        private final PathDistance pathDistance;
+        private final Path path;
+        private Node[] nodes = new Node[16];
+        private int depth;
+
+        RecomputingCursor(PathDistance pathDistance, Path path) {
+            this.pathDistance = pathDistance;
+            this.path = path;
+        }
+
+        @Override
+        public void push(Node node) {
+            if (depth == nodes.length) {
+                nodes = Arrays.copyOf(nodes, depth * 2);
+            }
+            nodes[depth++] = node;
+        }
+
+        @Override
+        public void pop() {
+            depth--;
+        }
+
+        @Override
+        public int distance() {
+            return pathDistance.distance(path, new Path(Arrays.copyOf(nodes, depth)));
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.epam.healenium.treecomparing;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Locality sensitive hashing of the nodes of a {@link PreparedDocument} by the text they hold: the inner text and
+ * the values of other attributes. Each node gets a MinHash signature over the character shingles of its text, the
+ * signature is split into bands of rows, and nodes are bucketed by the hash of each band. Nodes which share a bucket
+ * with the searched node likely have similar text.
+ * <p>
+ * Two nodes of text similarity (Jaccard index of shingles) s collide with probability 1 - (1 - s^rows)^bands: more
+ * bands find more of the less similar nodes, more rows filter out more of them. Nodes without text are not indexed.
+ * Immutable.
+ */
+final class MinHashIndex {
+
+    /**
+     * The length of a shingle, shorter texts make a single shingle
+     */
+    private static final int SHINGLE_LENGTH = 3;
+    private static final int[] NONE = new int[0];
+
+    private final int bands;
+    private final int rows;
+    private final long[] seeds;
+    private final Map<Long, int[]> buckets = new HashMap<>();
+
+    /**
+     * @param document the document to index
+     * @param bands    the number of bands of a signature
+     * @param rows     the number of rows in a band
+     */
+    MinHashIndex(PreparedDocument document, int bands, int rows) {
+        this.bands = bands;
+        this.rows = rows;
+        this.seeds = new long[bands * rows];
+        for (int i = 0; i < seeds.length; i++) {
+            seeds[i] = Fingerprints.mix(0x2545F4914F6CDD1DL, i);
+        }
+        Map<Long, FeatureIndex.Postings> postings = new HashMap<>();
+        long[] signature = new long[seeds.length];
+        for (int i = 0; i < document.size(); i++) {
+            if (!sign(document.getNode(i), signature)) {
+                continue;
+            }
+            for (int band = 0; band < bands; band++) {
+                postings.computeIfAbsent(bucket(signature, band), key -> new FeatureIndex.Postings()).add(i);
+            }
+        }
+        postings.forEach((bucket, posting) -> buckets.put(bucket, posting.toArray()));
+    }
+
+    int getBands() {
+        return bands;
+    }
+
+    int getRows() {
+        return rows;
+    }
+
+    /**
+     * @return the positions of the nodes which share a bucket with the searched node, null if the node has no text
+     */
+    BitSet candidates(PathQuery query) {
+        long[] signature = new long[seeds.length];
+        if (!sign(query.getNode(), signature)) {
+            return null;
+        }
+        BitSet candidates = new BitSet();
+        for (int band = 0; band < bands; band++) {
+            for (int position : buckets.getOrDefault(bucket(signature, band), NONE)) {
+                candidates.set(position);
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Evaluates the MinHash signature of the inner text and other attribute values of the node
+     *
+     * @return false if the node has no text
+     */
+    private boolean sign(Node node, long[] signature) {
+        Arrays.fill(signature, Long.MAX_VALUE);
+        boolean signed = addShingles(node.getInnerTextView(), 0, signature);
+        String[] names = node.getOtherAttributeNames();
+        String[] values = node.getOtherAttributeValues();
+        for (int i = 0; i < names.length; i++) {
+            signed |= addShingles(values[i], Fingerprints.mix(names[i].hashCode(), 1), signature);
+        }
+        return signed;
+    }
+
+    /**
+     * @param salt a value which tells the shingles of different attributes apart
+     * @return false if the text is empty
+     */
+    private boolean addShingles(CharSequence text, long salt, long[] signature) {
+        if (text == null || text.length() == 0) {
+            return false;
+        }
+        int last = Math.max(text.length() - SHINGLE_LENGTH, 0);
+        for (int start = 0; start <= last; start++) {
+            long shingle = salt;
+            for (int i = start; i < Math.min(start + SHINGLE_LENGTH, text.length()); i++) {
+                shingle = (shingle ^ Character.toLowerCase(text.charAt(i))) * 0x100000001B3L;
+            }
+            for (int i = 0; i < seeds.length; i++) {
+                signature[i] = Math.min(signature[i], Fingerprints.mix(seeds[i], shingle));
+            }
+        }
+        return true;
+    }
+
+    private long bucket(long[] signature, int band) {
+        long hash = band;
+        for (int i = band * rows; i < (band + 1) * rows; i++) {
+            hash = Fingerprints.mix(hash, signature[i]);
+        }
+        return hash;
+    }
+}
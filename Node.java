@@ -10,23 +10,63 @@ public class Node {
 
     private final String tag;
     private final String id;
-    private final Set<String> classes;
+    private final String[] classes;
     private final Integer index;
-    private final Map<String, String> otherAttributes;
+    private final String[] otherAttributeNames;
+    private final String[] otherAttributeValues;
     private final String innerText;
+    private final DocumentText documentText;
+    private final int textStart;
+    private final int textEnd;
 
     private Node parent;
     private List<Node> children;
 
-    Node(String tag, String id, Set<String> classes, Integer index,
-                Map<String, String> otherAttributes, List<Node> children, String innerText) {
+    /**
+     * @param classes              sorted distinct classes
+     * @param otherAttributeNames  sorted distinct names of attributes except id and class
+     * @param otherAttributeValues the values of attributes in the order of their names
+     */
+    Node(String tag, String id, String[] classes, Integer index, String[] otherAttributeNames,
+         String[] otherAttributeValues, List<Node> children, String innerText) {
         this.tag = tag;
         this.id = id;
         this.classes = classes;
         this.index = index;
-        this.otherAttributes = otherAttributes;
+        this.otherAttributeNames = otherAttributeNames;
+        this.otherAttributeValues = otherAttributeValues;
         this.children = children;
         this.innerText = innerText;
+        this.documentText = null;
+        this.textStart = 0;
+        this.textEnd = 0;
+    }
+
+    /**
+     * For views of nodes kept elsewhere, which override the getters
+     */
+    Node() {
+        this(null, null, SortedArrays.EMPTY, null, SortedArrays.EMPTY, SortedArrays.EMPTY, null, (String) null);
+    }
+
+    /**
+     * @param documentText the text of the whole document
+     * @param textStart    the start of the inner text in the document text
+     * @param textEnd      the end of the inner text in the document text
+     */
+    Node(String tag, String id, String[] classes, Integer index, String[] otherAttributeNames,
+         String[] otherAttributeValues, List<Node> children, DocumentText documentText, int textStart, int textEnd) {
+        this.tag = tag;
+        this.id = id;
+        this.classes = classes;
+        this.index = index;
+        this.otherAttributeNames = otherAttributeNames;
+        this.otherAttributeValues = otherAttributeValues;
+        this.children = children;
+        this.innerText = null;
+        this.documentText = documentText;
+        this.textStart = textStart;
+        this.textEnd = textEnd;
     }
 
     public String getTag() {
@@ -37,20 +77,37 @@ public class Node {
         return id;
     }
 
+    /**
+     * @return a read-only view of the classes
+     */
     public Set<String> getClasses() {
-        return classes;
+        return SortedArrays.asSet(classes);
     }
 
     public Integer getIndex() {
         return index;
     }
 
+    /**
+     * @return a read-only view of the attributes except id and class
+     */
     public Map<String, String> getOtherAttributes() {
-        return otherAttributes;
+        return SortedArrays.asMap(otherAttributeNames, otherAttributeValues);
     }
 
+    /**
+     * @return the joined text of the descendant text nodes, copied out of the document text on each call if the node
+     *         was built by a parser
+     */
     public String getInnerText() {
-        return innerText;
+        return documentText == null ? innerText : documentText.substring(textStart, textEnd);
+    }
+
+    /**
+     * @return the same text as {@link #getInnerText()}, but without copying it
+     */
+    public CharSequence getInnerTextView() {
+        return documentText == null ? innerText : documentText.subSequence(textStart, textEnd);
     }
 
     public List<Node> getChildren() {
@@ -65,29 +122,65 @@ public class Node {
         this.parent = parent;
     }
 
+    /**
+     * @return sorted classes, must not be modified
+     */
+    String[] getSortedClasses() {
+        return classes;
+    }
+
+    /**
+     * @return sorted names of attributes except id and class, must not be modified
+     */
+    String[] getOtherAttributeNames() {
+        return otherAttributeNames;
+    }
+
+    /**
+     * @return the values of attributes in the order of {@link #getOtherAttributeNames()}, must not be modified
+     */
+    String[] getOtherAttributeValues() {
+        return otherAttributeValues;
+    }
+
+    /**
+     * @return the text of the document the inner text is a range of, or null if the node has its own inner text
+     */
+    DocumentText getDocumentText() {
+        return documentText;
+    }
+
+    int getTextStart() {
+        return textStart;
+    }
+
+    int getTextEnd() {
+        return textEnd;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
+        if (!(o instanceof Node)) return false;
         Node node = (Node) o;
-        return Objects.equals(tag, node.tag) &&
-                Objects.equals(id, node.id);
+        return Objects.equals(getTag(), node.getTag()) &&
+                Objects.equals(getId(), node.getId());
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(tag, id);
+        return Objects.hash(getTag(), getId());
     }
 
     @Override
     public String toString() {
         return new StringJoiner(", ", Node.class.getSimpleName() + "[", "]")
-            .add("tag='" + tag + "'")
-            .add("id='" + id + "'")
-            .add("classes=" + classes)
-            .add("index=" + index)
-            .add("innerText='" + innerText + "'")
-            .add("otherAttributes=" + otherAttributes)
+            .add("tag='" + getTag() + "'")
+            .add("id='" + getId() + "'")
+            .add("classes=" + getClasses())
+            .add("index=" + getIndex())
+            .add("innerText='" + getInnerTextView() + "'")
+            .add("otherAttributes=" + getOtherAttributes())
             .toString();
     }
 }
@@ -2,36 +2,47 @@ package com.epam.healenium.treecomparing;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 import java.util.Set;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 /**
- * A builder class for {@link Node}
+ * A builder class for {@link Node}. Tags, class names and attribute names are interned into a {@link SymbolTable}.
  */
 public class NodeBuilder {
     private static final Set<String> MAIN_ATTRIBUTED = new HashSet<>(Arrays.asList("id", "class"));
 
+    private final SymbolTable symbolTable;
     private String tag;
     private String id = "";
-    private Set<String> classes = Collections.emptySet();
+    private String[] classes = SortedArrays.EMPTY;
     private Integer index = 0;
-    private Map<String, String> otherAttributes = Collections.emptyMap();
+    private String[] otherAttributeNames = SortedArrays.EMPTY;
+    private String[] otherAttributeValues = SortedArrays.EMPTY;
     private List<String> content = new ArrayList<>();
+    private DocumentText documentText;
+    private int textStart;
+    private int textEnd;
     private List<Node> children = new ArrayList<>();
 
+    public NodeBuilder() {
+        this(SymbolTable.getDefault());
+    }
+
+    /**
+     * @param symbolTable the table to intern tags, class names and attribute names into
+     */
+    public NodeBuilder(SymbolTable symbolTable) {
+        this.symbolTable = symbolTable;
+    }
+
     /**
      * @param tag the html tag of the element
      * @return this
      */
     public NodeBuilder setTag(String tag) {
-        this.tag = tag;
+        this.tag = symbolTable.intern(tag);
         return this;
     }
 
@@ -50,31 +61,98 @@ public class NodeBuilder {
      */
     public NodeBuilder setAttributes(Map<String, String> attributes) {
         this.id = attributes.getOrDefault("id", "");
-        this.classes = Optional.ofNullable(attributes.get("class"))
-            .map(s -> s.split(" "))
-            .map(Arrays::stream)
-            .orElse(Stream.empty())
-                .map(String::trim)
-                .filter(next -> !next.isEmpty())
-            .collect(Collectors.toSet());
-        this.otherAttributes = attributes.entrySet().stream()
-            .filter(s -> !MAIN_ATTRIBUTED.contains(s.getKey()) && !s.getKey().trim().isEmpty())
-            .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+        setClassAttribute(attributes.get("class"));
+        setOtherAttributes(attributes, true);
         return this;
     }
 
+    /**
+     * The same as {@link #setAttributes(Map)}, for parsers which keep attributes in arrays
+     *
+     * @param names  distinct names of all attributes, including id and class
+     * @param values the values of attributes in the order of their names
+     * @param length the number of attributes
+     * @return this
+     */
+    NodeBuilder setAttributes(String[] names, String[] values, int length) {
+        this.id = "";
+        String classAttribute = null;
+        String[] otherNames = new String[length];
+        int count = 0;
+        for (int i = 0; i < length; i++) {
+            if ("id".equals(names[i])) {
+                this.id = values[i];
+            } else if ("class".equals(names[i])) {
+                classAttribute = values[i];
+            } else if (!names[i].trim().isEmpty()) {
+                otherNames[count++] = symbolTable.intern(names[i]);
+            }
+        }
+        setClassAttribute(classAttribute);
+        otherNames = SortedArrays.sortDistinct(otherNames, count);
+        String[] otherValues = new String[otherNames.length];
+        for (int i = 0; i < otherNames.length; i++) {
+            for (int j = 0; j < length; j++) {
+                if (otherNames[i].equals(names[j])) {
+                    otherValues[i] = values[j];
+                    break;
+                }
+            }
+        }
+        this.otherAttributeNames = otherNames;
+        this.otherAttributeValues = otherValues;
+        return this;
+    }
+
+    private void setClassAttribute(String classAttribute) {
+        if (classAttribute == null) {
+            this.classes = SortedArrays.EMPTY;
+            return;
+        }
+        String[] classNames = classAttribute.split(" ");
+        int count = 0;
+        for (String className : classNames) {
+            String trimmed = className.trim();
+            if (!trimmed.isEmpty()) {
+                classNames[count++] = symbolTable.intern(trimmed);
+            }
+        }
+        this.classes = SortedArrays.sortDistinct(classNames, count);
+    }
+
     public NodeBuilder setId(String id) {
         this.id = id;
         return this;
     }
 
     public NodeBuilder setClasses(Set<String> classes) {
-        this.classes = classes;
+        String[] classNames = classes.toArray(new String[0]);
+        for (int i = 0; i < classNames.length; i++) {
+            classNames[i] = symbolTable.intern(classNames[i]);
+        }
+        this.classes = SortedArrays.sortDistinct(classNames, classNames.length);
         return this;
     }
 
     public NodeBuilder setOtherAttributes(Map<String, String> otherAttributes) {
-        this.otherAttributes = otherAttributes;
+        return setOtherAttributes(otherAttributes, false);
+    }
+
+    private NodeBuilder setOtherAttributes(Map<String, String> attributes, boolean skipMainAttributes) {
+        String[] names = new String[attributes.size()];
+        int count = 0;
+        for (String name : attributes.keySet()) {
+            if (!skipMainAttributes || !MAIN_ATTRIBUTED.contains(name) && !name.trim().isEmpty()) {
+                names[count++] = symbolTable.intern(name);
+            }
+        }
+        names = SortedArrays.sortDistinct(names, count);
+        String[] values = new String[names.length];
+        for (int i = 0; i < names.length; i++) {
+            values[i] = attributes.get(names[i]);
+        }
+        this.otherAttributeNames = names;
+        this.otherAttributeValues = values;
         return this;
     }
 
@@ -103,14 +181,30 @@ public class NodeBuilder {
         return this;
     }
 
+    /**
+     * Sets the inner text as a range of the document text, instead of the content
+     *
+     * @return this
+     */
+    NodeBuilder setText(DocumentText documentText, int textStart, int textEnd) {
+        this.documentText = documentText;
+        this.textStart = textStart;
+        this.textEnd = textEnd;
+        return this;
+    }
+
     public NodeBuilder copy() {
-        NodeBuilder copy = new NodeBuilder();
+        NodeBuilder copy = new NodeBuilder(symbolTable);
         copy.tag = this.tag;
         copy.id = this.id;
-        copy.classes = new HashSet<>(this.classes);
+        copy.classes = this.classes;
         copy.index = this.index;
-        copy.otherAttributes = new HashMap<>(this.otherAttributes);
+        copy.otherAttributeNames = this.otherAttributeNames;
+        copy.otherAttributeValues = this.otherAttributeValues;
         copy.content = new ArrayList<>(this.content);
+        copy.documentText = this.documentText;
+        copy.textStart = this.textStart;
+        copy.textEnd = this.textEnd;
         copy.children = new ArrayList<>(this.children);
         return copy;
     }
@@ -119,8 +213,14 @@ public class NodeBuilder {
      * @return a built node
      */
     public Node build() {
-        String fullContent = String.join(System.lineSeparator(), content);
-        Node node = new Node(tag, id, classes, index, otherAttributes, children, fullContent);
+        Node node;
+        if (documentText != null) {
+            node = new Node(tag, id, classes, index, otherAttributeNames, otherAttributeValues, children,
+                    documentText, textStart, textEnd);
+        } else {
+            String fullContent = String.join(System.lineSeparator(), content);
+            node = new Node(tag, id, classes, index, otherAttributeNames, otherAttributeValues, children, fullContent);
+        }
         for (Node child : node.getChildren()) {
             child.setParent(node);
         }
@@ -11,4 +11,47 @@ public interface NodeDistance {
 
     double distance(Node node1, Node node2, int LCSDistance, int curPathHeight);
 
+    /**
+     * The same as {@link #distance(Node, Node, int, int)} for the searched node of the query, an implementation may
+     * use the data the query has precomputed instead of evaluating it for each compared node.
+     *
+     * @param query         the compiled searched path
+     * @param node          the compared node
+     * @param LCSDistance   the LCS distance of the compared node
+     * @param curPathHeight the height of path the LCS distance is related to
+     * @return the distance between the searched and the compared nodes
+     */
+    default double distance(PathQuery query, Node node, int LCSDistance, int curPathHeight) {
+        return distance(query.getNode(), node, LCSDistance, curPathHeight);
+    }
+
+    /**
+     * The same as {@link #distance(PathQuery, Node, int, int)} for the node at the position of the document, an
+     * implementation may use the data the document has precomputed for its nodes.
+     *
+     * @param query         the compiled searched path
+     * @param document      the searched document
+     * @param position      the position of the compared node
+     * @param LCSDistance   the LCS distance of the compared node
+     * @param curPathHeight the height of path the LCS distance is related to
+     * @return the distance between the searched and the compared nodes
+     */
+    default double distance(PathQuery query, PreparedDocument document, int position, int LCSDistance,
+                            int curPathHeight) {
+        return distance(query, document.getNode(position), LCSDistance, curPathHeight);
+    }
+
+    /**
+     * An upper bound of {@link #distance} for any pair of nodes with the given LCS distance, it lets a search skip
+     * candidates which can't beat the nodes already found. Must not decrease as LCSDistance grows.
+     * By default there's no bound, so nothing is skipped.
+     *
+     * @param LCSDistance   the LCS distance of the candidate
+     * @param curPathHeight the height of path the LCS distance is related to
+     * @return the max possible distance
+     */
+    default double maxDistance(int LCSDistance, int curPathHeight) {
+        return Double.POSITIVE_INFINITY;
+    }
+
 }
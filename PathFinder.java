@@ -4,6 +4,8 @@ import lombok.extern.slf4j.Slf4j;
 
 import java.lang.Integer;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import static com.epam.healenium.treecomparing.StreamUtils.logFiltered;
@@ -11,8 +13,17 @@ import static com.epam.healenium.treecomparing.StreamUtils.logFiltered;
 @Slf4j
 public class PathFinder {
 
+    private static final int DEFAULT_PARALLEL_THRESHOLD = 2048;
+
     private final PathDistance pathDistance;
     private final NodeDistance nodeDistance;
+    private final ForkJoinPool forkJoinPool;
+    private final int parallelThreshold;
+    private final double exactMatchPathSimilarity;
+    private final boolean candidateIndex;
+    private final int minHashBands;
+    private final int minHashRows;
+    private final PathFinderListener listener;
 
     /**
      * Creates a path finder which operates certain algorithms of distance by path and by node comparing
@@ -21,8 +32,127 @@ public class PathFinder {
      * @param nodeDistance an algorithm to evaluate node likeness by content
      */
     public PathFinder(PathDistance pathDistance, NodeDistance nodeDistance) {
+        this(pathDistance, nodeDistance, null, DEFAULT_PARALLEL_THRESHOLD);
+    }
+
+    /**
+     * Creates a path finder which splits the search in large documents into subtree tasks run in the given pool
+     *
+     * @param pathDistance an algorithm to evaluate node likeness by their path
+     * @param nodeDistance an algorithm to evaluate node likeness by content
+     * @param forkJoinPool a pool to run the search in
+     */
+    public PathFinder(PathDistance pathDistance, NodeDistance nodeDistance, ForkJoinPool forkJoinPool) {
+        this(pathDistance, nodeDistance, forkJoinPool, DEFAULT_PARALLEL_THRESHOLD);
+    }
+
+    /**
+     * Creates a path finder which splits the search in large documents into subtree tasks run in the given pool.
+     * The result is the same as the one of the sequential search.
+     *
+     * @param pathDistance      an algorithm to evaluate node likeness by their path
+     * @param nodeDistance      an algorithm to evaluate node likeness by content
+     * @param forkJoinPool      a pool to run the search in, null to run it in the calling thread
+     * @param parallelThreshold the number of nodes up to which a document or its part is searched sequentially
+     */
+    public PathFinder(PathDistance pathDistance, NodeDistance nodeDistance, ForkJoinPool forkJoinPool, int parallelThreshold) {
+        this(pathDistance, nodeDistance, forkJoinPool, parallelThreshold, 0, false, 0, 0,
+                PathFinderListener.NONE);
+    }
+
+    private PathFinder(PathDistance pathDistance, NodeDistance nodeDistance, ForkJoinPool forkJoinPool,
+                       int parallelThreshold, double exactMatchPathSimilarity, boolean candidateIndex,
+                       int minHashBands, int minHashRows, PathFinderListener listener) {
         this.pathDistance = pathDistance;
         this.nodeDistance = nodeDistance;
+        this.forkJoinPool = forkJoinPool;
+        this.parallelThreshold = parallelThreshold;
+        this.exactMatchPathSimilarity = exactMatchPathSimilarity;
+        this.candidateIndex = candidateIndex;
+        this.minHashBands = minHashBands;
+        this.minHashRows = minHashRows;
+        this.listener = listener;
+    }
+
+    /**
+     * Creates a path finder which returns the exact match of the searched node right away, without scoring the rest
+     * of nodes. The exact match is the only node of the document with the same tag, id, classes, attributes and
+     * inner text as the searched node, which path is similar enough to the searched path. It is returned alone with
+     * score 1. If there is no such node or there are several ones, the full search is done.
+     *
+     * @param minPathSimilarity the min LCS distance of the path of the exact match to the searched path, relative to
+     *                          the length of the searched path, from 0 exclusive to 1 inclusive
+     * @return a path finder with the exact match search
+     */
+    public PathFinder withExactMatch(double minPathSimilarity) {
+        if (minPathSimilarity <= 0 || minPathSimilarity > 1) {
+            throw new IllegalArgumentException("Min path similarity must be in range (0..1], but was " + minPathSimilarity);
+        }
+        return new PathFinder(pathDistance, nodeDistance, forkJoinPool, parallelThreshold, minPathSimilarity,
+                candidateIndex, minHashBands, minHashRows, listener);
+    }
+
+    /**
+     * Creates a path finder which scores only the nodes sharing at least one feature with the searched node: the tag,
+     * the id, a class or an attribute of the same value. The features are looked up in an inverted index of the
+     * prepared document, built once per document. The scores of such nodes don't change, the rest of nodes are not
+     * scored and not returned. If no node shares a feature, all the nodes are scored as usual.
+     *
+     * @return a path finder with the candidate index
+     */
+    public PathFinder withCandidateIndex() {
+        return new PathFinder(pathDistance, nodeDistance, forkJoinPool, parallelThreshold, exactMatchPathSimilarity,
+                true, minHashBands, minHashRows, listener);
+    }
+
+    /**
+     * Creates a path finder which scores only the nodes of text similar to the text of the searched node, found
+     * approximately by MinHash signatures of the inner text and other attribute values, bucketed by LSH. Nodes are
+     * scored only if they share a bucket with the searched node, so nodes of the same text are always found, nodes of
+     * less similar text may be missed. The scores of the found nodes don't change. If the searched node has no text or
+     * no node shares a bucket, all the nodes are scored as usual. Combined with {@link #withCandidateIndex()}, a node
+     * must pass both.
+     * <p>
+     * Nodes of text similarity s are found with probability 1 - (1 - s^rows)^bands. The signatures are evaluated once
+     * per prepared document and parameters, it takes time proportional to the text length and bands * rows.
+     *
+     * @param bands the number of bands of a signature, more bands find more nodes
+     * @param rows  the number of rows in a band, more rows find less nodes of low similarity
+     * @return a path finder with the approximate candidate search
+     */
+    public PathFinder withMinHash(int bands, int rows) {
+        if (bands <= 0 || rows <= 0) {
+            throw new IllegalArgumentException("Bands and rows must be positive, but were " + bands + " and " + rows);
+        }
+        return new PathFinder(pathDistance, nodeDistance, forkJoinPool, parallelThreshold, exactMatchPathSimilarity,
+                candidateIndex, bands, rows, listener);
+    }
+
+    /**
+     * Creates a path finder which reports the durations and sizes of the phases of each search to the listener
+     *
+     * @param listener the listener of the phases, {@link PathFinderListener#NONE} to report nothing
+     * @return a path finder with the listener
+     */
+    public PathFinder withListener(PathFinderListener listener) {
+        return new PathFinder(pathDistance, nodeDistance, forkJoinPool, parallelThreshold, exactMatchPathSimilarity,
+                candidateIndex, minHashBands, minHashRows, Objects.requireNonNull(listener));
+    }
+
+    /**
+     * @return the nodes to score, null to score all
+     */
+    private BitSet candidates(PathQuery query, PreparedDocument document) {
+        BitSet candidates = candidateIndex ? document.getFeatureIndex().candidates(query) : null;
+        if (minHashBands > 0) {
+            BitSet similar = document.getMinHashIndex(minHashBands, minHashRows).candidates(query);
+            if (candidates == null) {
+                candidates = similar;
+            } else if (similar != null) {
+                candidates.and(similar);
+            }
+        }
+        return candidates;
     }
 
     /**
@@ -46,10 +176,165 @@ public class PathFinder {
      *                         their full info.
      * @param newSource        the parsed DOM of the changed page in which we will look for the searched node
      * @param bestGuessesCount the size of the result collection, i.e. the number of similar nodes to return
-     * @return a list of probably similar nodes, ordered by likeness descending, with the size of bestGuessesCount
+     * @return a list of probably similar nodes, ordered by likeness descending, with the size of bestGuessesCount;
+     *         only that many nodes are kept during the search, use {@link #findScoresToNodes} to get all the scores
      */
     public List<Scored<Node>> find(Path path, Node newSource, int bestGuessesCount) {
-        return getSortedNodes(findScoresToNodes(path, newSource).getValue(), bestGuessesCount, -1);
+        return find(new PathQuery(path), prepare(newSource), bestGuessesCount);
+    }
+
+    /**
+     * Finds the list of nodes that most likely are our searched one, ordered by likeness descending
+     *
+     * @param path             a collection of nodes that represents the total searched node path; the first node is
+     *                         html tag, the last node is the searched node.  We assume that all nodes in the path have
+     *                         their full info.
+     * @param newSource        the prepared DOM of the changed page in which we will look for the searched node
+     * @param bestGuessesCount the size of the result collection, i.e. the number of similar nodes to return
+     * @return a list of probably similar nodes, ordered by likeness descending, with the size of bestGuessesCount
+     */
+    public List<Scored<Node>> find(Path path, PreparedDocument newSource, int bestGuessesCount) {
+        return find(new PathQuery(path), newSource, bestGuessesCount);
+    }
+
+    /**
+     * Finds the list of nodes that most likely are our searched one, ordered by likeness descending
+     *
+     * @param query            the compiled searched path, which can be reused for many documents
+     * @param newSource        the prepared DOM of the changed page in which we will look for the searched node
+     * @param bestGuessesCount the size of the result collection, i.e. the number of similar nodes to return
+     * @return a list of probably similar nodes, ordered by likeness descending, with the size of bestGuessesCount
+     */
+    public List<Scored<Node>> find(PathQuery query, PreparedDocument newSource, int bestGuessesCount) {
+        return find(Collections.singletonList(query), newSource, bestGuessesCount).get(0);
+    }
+
+    /**
+     * Finds the nearest node as {@link #findNearest(Path, Node)} does, but within the given time. The candidates are
+     * scored in the order of their path distance, so if the time runs out, the node is the best of the most promising
+     * candidates.
+     *
+     * @param path      the searched path, see {@link #findNearest(Path, Node)}
+     * @param newSource the parsed DOM of the changed page in which we will look for the searched node
+     * @param timeout   the time to search for
+     * @param unit      the unit of the timeout
+     * @return the most likely node if there is any, and whether all the candidates were considered
+     */
+    public SearchResult findNearest(Path path, Node newSource, long timeout, TimeUnit unit) {
+        return find(path, newSource, 1, timeout, unit);
+    }
+
+    /**
+     * Finds the nodes as {@link #find(Path, Node, int)} does, but within the given time, see
+     * {@link #find(PathQuery, PreparedDocument, int, long, TimeUnit, CancellationToken)}
+     *
+     * @param path             the searched path, see {@link #find(Path, Node, int)}
+     * @param newSource        the parsed DOM of the changed page in which we will look for the searched node
+     * @param bestGuessesCount the number of similar nodes to return
+     * @param timeout          the time to search for, including the preparation of the document
+     * @param unit             the unit of the timeout
+     * @return the best nodes found, and whether all the candidates were considered
+     */
+    public SearchResult find(Path path, Node newSource, int bestGuessesCount, long timeout, TimeUnit unit) {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        return find(new PathQuery(path), prepare(newSource), bestGuessesCount, deadline, null);
+    }
+
+    /**
+     * Finds the nodes as {@link #find(PathQuery, PreparedDocument, int)} does, but stops once the time runs out or the
+     * search is cancelled, and returns the best nodes found so far. The leaf paths are compared with the searched
+     * path first, then the candidates are scored in the order of the path distance descending, i.e. the most
+     * promising subtrees first. At least the candidate of the best path distance is scored, the time is checked
+     * every few candidates, so the search may take a bit longer than the timeout.
+     *
+     * @param query             the compiled searched path
+     * @param newSource         the prepared DOM of the changed page in which we will look for the searched node
+     * @param bestGuessesCount  the number of similar nodes to return
+     * @param timeout           the time to search for
+     * @param unit              the unit of the timeout
+     * @param cancellationToken the token to stop the search from another thread, or null
+     * @return the best nodes found, and whether all the candidates were considered
+     */
+    public SearchResult find(PathQuery query, PreparedDocument newSource, int bestGuessesCount, long timeout,
+                             TimeUnit unit, CancellationToken cancellationToken) {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        return find(query, newSource, bestGuessesCount, deadline, cancellationToken);
+    }
+
+    /**
+     * Finds the nodes that most likely are the searched ones for each of the given paths. The leaf paths of the
+     * document are compared with all the searched paths in a single traversal.
+     *
+     * @param queries          the compiled searched paths, see {@link #find(Path, Node, int)}
+     * @param newSource        the prepared DOM of the changed page in which we will look for the searched nodes
+     * @param bestGuessesCount the size of each result collection, i.e. the number of similar nodes to return per path
+     * @return a list of probably similar nodes, ordered by likeness descending, for each of the paths in their order
+     */
+    public List<List<Scored<Node>>> find(List<PathQuery> queries, PreparedDocument newSource, int bestGuessesCount) {
+        int nodeLimit = normalizeLimit(bestGuessesCount);
+        List<List<Scored<Node>>> found = new ArrayList<>(Collections.nCopies(queries.size(), null));
+        List<PathQuery> searched = new ArrayList<>(queries.size());
+        List<Integer> searchedIndexes = new ArrayList<>(queries.size());
+        long start = startExactMatch();
+        for (int i = 0; i < queries.size(); i++) {
+            int exactMatch = findExactMatch(queries.get(i), newSource);
+            if (exactMatch >= 0 && nodeLimit > 0) {
+                found.set(i, Collections.singletonList(new Scored<>(1.0, newSource.getNode(exactMatch))));
+            } else if (exactMatch >= 0) {
+                found.set(i, Collections.emptyList());
+            } else {
+                searched.add(queries.get(i));
+                searchedIndexes.add(i);
+            }
+        }
+        if (exactMatchPathSimilarity > 0) {
+            listener.exactMatched(System.nanoTime() - start, queries.size(), queries.size() - searched.size());
+        }
+        if (searched.isEmpty()) {
+            return found;
+        }
+        start = start(PathFinderListener.Phase.LEAVES_SCANNED);
+        int[][] distances = new LeafScan(searched, newSource, pathDistance, forkJoinPool, parallelThreshold).run();
+        listener.leavesScanned(System.nanoTime() - start, searched.size(), countLeaves(newSource));
+        for (int i = 0; i < searched.size(); i++) {
+            start = start(PathFinderListener.Phase.SCORED);
+            PathQuery query = searched.get(i);
+            PathSearch search = new PathSearch(query, newSource, distances[i], candidates(query, newSource), nodeDistance,
+                    forkJoinPool, parallelThreshold);
+            List<Scored<Node>> best = search.findBest(nodeLimit).toList();
+            listener.scored(System.nanoTime() - start, newSource.size(), search.getCandidateCount(),
+                    search.getScoredCount(), best.size());
+            found.set(searchedIndexes.get(i), best);
+        }
+        return found;
+    }
+
+    /**
+     * @param deadline the {@link System#nanoTime()} to stop scoring at
+     */
+    private SearchResult find(PathQuery query, PreparedDocument newSource, int bestGuessesCount, long deadline,
+                              CancellationToken cancellationToken) {
+        int nodeLimit = normalizeLimit(bestGuessesCount);
+        long start = startExactMatch();
+        int exactMatch = findExactMatch(query, newSource);
+        if (exactMatchPathSimilarity > 0) {
+            listener.exactMatched(System.nanoTime() - start, 1, exactMatch >= 0 ? 1 : 0);
+        }
+        if (exactMatch >= 0) {
+            return new SearchResult(nodeLimit > 0
+                    ? Collections.singletonList(new Scored<>(1.0, newSource.getNode(exactMatch)))
+                    : Collections.emptyList(), true);
+        }
+        start = start(PathFinderListener.Phase.LEAVES_SCANNED);
+        int[] distances = new LeafScan(Collections.singletonList(query), newSource, pathDistance, forkJoinPool, parallelThreshold).run()[0];
+        listener.leavesScanned(System.nanoTime() - start, 1, countLeaves(newSource));
+        start = start(PathFinderListener.Phase.SCORED);
+        PathSearch search = new PathSearch(query, newSource, distances, candidates(query, newSource), nodeDistance,
+                forkJoinPool, parallelThreshold);
+        List<Scored<Node>> best = search.findBest(nodeLimit, deadline, cancellationToken).toList();
+        listener.scored(System.nanoTime() - start, newSource.size(), search.getCandidateCount(),
+                search.getScoredCount(), best.size());
+        return new SearchResult(best, !search.isStopped());
     }
 
     /**
@@ -59,34 +344,72 @@ public class PathFinder {
      *                  html tag, the last node is the searched node.  We assume that all nodes in the path have
      *                  their full info.
      * @param newSource the parsed DOM of the changed page in which we will look for the searched node
-     * @return a Map of probably similar nodes, with the size of bestGuessesCount.
+     * @return a Map of probably similar nodes, with the size of bestGuessesCount. Each node is scored once, with
+     *         the best LCS distance among the leaf paths going through it; nodes of equal score keep the document order.
+     * @see #findScoredNodes(PathQuery, PreparedDocument) the same nodes without boxing
      */
     public AbstractMap.SimpleImmutableEntry<Integer, Map<Double, List<AbstractMap.SimpleImmutableEntry<Node, Integer>>>> findScoresToNodes(
             Path path, Node newSource) {
 
-        List<Path> destinationLeaves = findAllLeafPaths(newSource);
-
-        Node byPath = path.getLastNode();
-        int pathLength = path.getNodes().length;
-
-        List<AbstractMap.SimpleImmutableEntry<Path, Integer>> paths = new ArrayList<>();
-        int maxLCSDistance = 0;
-        for (Path destinationLeaf : destinationLeaves) {
-            int distance = pathDistance.distance(path, destinationLeaf);
-            if (distance < 1) {
-                continue;
+        ScoredNodes scoredNodes = findScoredNodes(new PathQuery(path), prepare(newSource));
+        Map<Double, List<AbstractMap.SimpleImmutableEntry<Node, Integer>>> scoresToNodes = new HashMap<>();
+        List<AbstractMap.SimpleImmutableEntry<Node, Integer>> nodes = null;
+        for (int i = 0; i < scoredNodes.size(); i++) {
+            if (i == 0 || Double.compare(scoredNodes.getScore(i), scoredNodes.getScore(i - 1)) != 0) {
+                nodes = new ArrayList<>();
+                scoresToNodes.put(scoredNodes.getScore(i), nodes);
             }
-            maxLCSDistance = Math.max(maxLCSDistance, distance);
-            paths.add(new AbstractMap.SimpleImmutableEntry<>(destinationLeaf, distance));
+            nodes.add(new AbstractMap.SimpleImmutableEntry<>(scoredNodes.getNode(i), scoredNodes.getDistance(i)));
         }
+        return new AbstractMap.SimpleImmutableEntry<>(scoredNodes.getPathLengthToCheck(), scoresToNodes);
+    }
 
-        int pathLengthToCheck = Math.min(maxLCSDistance, pathLength);
-        Map<Double, List<AbstractMap.SimpleImmutableEntry<Node, Integer>>> scoresToNodes = paths.stream()
-                .map(pathPair -> new AbstractMap.SimpleImmutableEntry<>(Arrays.copyOfRange(pathPair.getKey().getNodes(), pathPair.getValue() - 1, pathPair.getKey().getNodes().length), pathPair.getValue()))
-                .flatMap(pathPair -> Arrays.stream(pathPair.getKey()).map(it -> new AbstractMap.SimpleImmutableEntry<Node, Integer>(it, pathPair.getValue())))
-                .collect(Collectors.groupingBy(nodePair -> nodeDistance.distance(byPath, nodePair.getKey(), nodePair.getValue(), pathLengthToCheck)));
+    /**
+     * Finds all nodes that most likely are our searched one, ordered by likeness descending, as
+     * {@link #findScoresToNodes(Path, Node)} does, but keeps them in primitive arrays
+     *
+     * @param query     the compiled searched path
+     * @param newSource the prepared DOM of the changed page in which we will look for the searched node
+     * @return all the scored nodes ordered by score descending, nodes of equal score in the document order
+     */
+    public ScoredNodes findScoredNodes(PathQuery query, PreparedDocument newSource) {
+        long start = startExactMatch();
+        int exactMatch = findExactMatch(query, newSource);
+        if (exactMatchPathSimilarity > 0) {
+            listener.exactMatched(System.nanoTime() - start, 1, exactMatch >= 0 ? 1 : 0);
+        }
+        if (exactMatch >= 0) {
+            int distance = pathDistance.distance(query.getPath(), ancestorPath(newSource, exactMatch));
+            return new ScoredNodes(new double[]{1.0}, new int[]{distance}, new int[]{exactMatch},
+                    new Node[]{newSource.getNode(exactMatch)}, 1, Math.min(distance, query.getPath().getNodes().length));
+        }
+        start = start(PathFinderListener.Phase.LEAVES_SCANNED);
+        int[] distances = new LeafScan(Collections.singletonList(query), newSource, pathDistance, forkJoinPool, parallelThreshold).run()[0];
+        listener.leavesScanned(System.nanoTime() - start, 1, countLeaves(newSource));
+        start = start(PathFinderListener.Phase.SCORED);
+        PathSearch search = new PathSearch(query, newSource, distances, candidates(query, newSource), nodeDistance,
+                forkJoinPool, parallelThreshold);
+        double[] scores = search.scoreAll();
+        int size = search.getCandidateCount();
+        listener.scored(System.nanoTime() - start, newSource.size(), size, search.getScoredCount(), size);
 
-        return new AbstractMap.SimpleImmutableEntry<>(pathLengthToCheck, scoresToNodes);
+        start = start(PathFinderListener.Phase.SORTED);
+        double[] candidateScores = new double[size];
+        int[] candidateDistances = new int[size];
+        int[] positions = new int[size];
+        Node[] nodes = new Node[size];
+        for (int i = 0, j = 0; i < scores.length; i++) {
+            if (search.isCandidate(i)) {
+                candidateScores[j] = scores[i];
+                candidateDistances[j] = search.getDistance(i);
+                positions[j] = i;
+                nodes[j++] = newSource.getNode(i);
+            }
+        }
+        ScoredNodes scoredNodes = new ScoredNodes(candidateScores, candidateDistances, positions, nodes, size,
+                search.getPathLengthToCheck());
+        listener.sorted(System.nanoTime() - start, countDistinctScores(scoredNodes), size);
+        return scoredNodes;
     }
 
     /**
@@ -101,35 +424,122 @@ public class PathFinder {
         // normalize params
         final int nodeLimit = normalizeLimit(bestGuessesCount);
         final double scoreLimit = normalizeScoreCap(guessCap);
-        return scoresToNodes.keySet().stream()
+        long start = start(PathFinderListener.Phase.SORTED);
+        List<Scored<Node>> sorted = scoresToNodes.keySet().stream()
                 .sorted(Comparator.reverseOrder())
                 .filter(logFiltered(score -> score >= scoreLimit, score -> log.debug("Skipping nodes, because their score={} less then {}", score, scoreLimit)))
                 .flatMap(score -> scoresToNodes.get(score).stream().map(it -> new Scored<>(score, it.getKey())))
                 .limit(nodeLimit)
                 .collect(Collectors.toList());
+        listener.sorted(System.nanoTime() - start, scoresToNodes.size(), sorted.size());
+        return sorted;
+    }
+
+    /**
+     * Selects the best of all nodes that most likely are our searched one, as
+     * {@link #getSortedNodes(Map, int, double)} does, without copying them
+     *
+     * @param scoredNodes      the nodes found by {@link #findScoredNodes(PathQuery, PreparedDocument)}
+     * @param bestGuessesCount the size of the result collection, i.e. the number of similar nodes to return
+     * @param guessCap         a min score, that path must exceed to be selected
+     * @return the view of the best nodes, ordered by likeness descending, with the size of bestGuessesCount at most
+     */
+    public ScoredNodes getSortedNodes(ScoredNodes scoredNodes, int bestGuessesCount, double guessCap) {
+        double scoreLimit = normalizeScoreCap(guessCap);
+        ScoredNodes capped = scoredNodes.withMinScore(scoreLimit);
+        if (capped.size() < scoredNodes.size()) {
+            log.debug("Skipping {} nodes, because their score less then {}", scoredNodes.size() - capped.size(), scoreLimit);
+        }
+        return capped.top(normalizeLimit(bestGuessesCount));
     }
 
-    private List<Path> findAllLeafPaths(Node node) {
-        List<Path> paths = new ArrayList<>();
-        addLeafPath(paths, new Path(node));
-        return paths;
+    private PreparedDocument prepare(Node root) {
+        long start = start(PathFinderListener.Phase.PREPARED);
+        PreparedDocument document = new PreparedDocument(root);
+        listener.prepared(System.nanoTime() - start, document.size(), countLeaves(document));
+        return document;
     }
 
-    private void addLeafPath(List<Path> leaves, Path current) {
-        Deque<Path> paths = new ArrayDeque<>();
-        paths.addFirst(current);
+    /**
+     * @return the start of the phase, reported to the listener
+     */
+    private long start(PathFinderListener.Phase phase) {
+        listener.started(phase);
+        return System.nanoTime();
+    }
 
-        while (!paths.isEmpty()) {
-            Path path = paths.removeLast();
-            Node node = path.getLastNode();
-            if (node.getChildren() == null || node.getChildren().isEmpty()) {
-                leaves.add(path);
-            } else {
-                for (Node child : node.getChildren()) {
-                    paths.addFirst(Utils.addNode(path, child));
-                }
+    /**
+     * @return the start of the exact match phase, reported to the listener if exact matches are looked for
+     */
+    private long startExactMatch() {
+        return exactMatchPathSimilarity > 0 ? start(PathFinderListener.Phase.EXACT_MATCHED) : System.nanoTime();
+    }
+
+    /**
+     * @return the number of leaves, or 0 if nobody listens
+     */
+    private int countLeaves(PreparedDocument document) {
+        if (listener == PathFinderListener.NONE) {
+            return 0;
+        }
+        int count = 0;
+        for (int i = 0; i < document.size(); i++) {
+            if (document.isLeaf(i)) {
+                count++;
             }
         }
+        return count;
+    }
+
+    /**
+     * @return the number of distinct scores of the sorted nodes, the keys of {@link #findScoresToNodes}, or 0 if
+     *         nobody listens
+     */
+    private int countDistinctScores(ScoredNodes scoredNodes) {
+        if (listener == PathFinderListener.NONE) {
+            return 0;
+        }
+        int count = 0;
+        for (int i = 0; i < scoredNodes.size(); i++) {
+            if (i == 0 || Double.compare(scoredNodes.getScore(i), scoredNodes.getScore(i - 1)) != 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the position of the exact match of the searched node, or -1 if there is none or the search is off
+     */
+    private int findExactMatch(PathQuery query, PreparedDocument document) {
+        if (exactMatchPathSimilarity <= 0) {
+            return -1;
+        }
+        int minDistance = (int) Math.ceil(exactMatchPathSimilarity * query.getPath().getNodes().length);
+        int match = -1;
+        for (int position : document.getFingerprintIndex().get(query.getFingerprint())) {
+            if (!Fingerprints.equalContent(query.getNode(), document.getNode(position))
+                    || pathDistance.distance(query.getPath(), ancestorPath(document, position)) < minDistance) {
+                continue;
+            }
+            if (match >= 0) {
+                log.debug("Several exact matches of the searched node, the full search will be done");
+                return -1;
+            }
+            match = position;
+        }
+        return match;
+    }
+
+    /**
+     * @return the path from the root to the node at the position
+     */
+    private static Path ancestorPath(PreparedDocument document, int position) {
+        Node[] nodes = new Node[document.getDepth(position) + 1];
+        for (int i = nodes.length - 1; i >= 0; i--, position = document.getParent(position)) {
+            nodes[i] = document.getNode(position);
+        }
+        return new Path(nodes);
     }
 
     /**
@@ -0,0 +1,90 @@
+package com.epam.healenium.treecomparing;
+
+/**
+ * Receives the durations and sizes of the phases of a search, to find out where the time of a slow search goes. Set
+ * it with {@link PathFinder#withListener(PathFinderListener)} and wrap the parser into
+ * {@link InstrumentedDocumentParser} to get the parse phase too.
+ * <p>
+ * Each method is called once a phase ends, in the thread which runs the search, with the duration in nanoseconds.
+ * {@link #started(Phase)} is called right before the duration starts to be measured, in the same thread, e.g. for a
+ * profiler to span the phase. The methods do nothing by default, so a listener overrides only the phases it needs.
+ * A listener shared by path finders which run in parallel must be thread safe. The listener must not throw.
+ */
+public interface PathFinderListener {
+
+    /**
+     * The listener which does nothing, the default of path finders
+     */
+    PathFinderListener NONE = new PathFinderListener() {
+    };
+
+    /**
+     * A phase starts, the method of the phase is called once it ends, unless the search fails
+     */
+    default void started(Phase phase) {
+    }
+
+    /**
+     * A page is parsed into a tree of nodes
+     *
+     * @param nodeCount the number of nodes of the tree
+     */
+    default void parsed(long nanos, int nodeCount) {
+    }
+
+    /**
+     * A tree is flattened into a {@link PreparedDocument}
+     *
+     * @param nodeCount the number of nodes
+     * @param leafCount the number of leaves
+     */
+    default void prepared(long nanos, int nodeCount, int leafCount) {
+    }
+
+    /**
+     * The exact matches of the searched nodes are looked for, see {@link PathFinder#withExactMatch(double)}
+     *
+     * @param queryCount the number of searched paths
+     * @param matchCount the number of paths with an exact match, which are not searched further
+     */
+    default void exactMatched(long nanos, int queryCount, int matchCount) {
+    }
+
+    /**
+     * The leaf paths of the document are compared with the searched paths by the path distance
+     *
+     * @param queryCount the number of searched paths
+     * @param leafCount  the number of leaves of the document
+     */
+    default void leavesScanned(long nanos, int queryCount, int leafCount) {
+    }
+
+    /**
+     * The nodes are scored by the node distance for a searched path. Of all the nodes, only the candidates are
+     * searched: the nodes on a leaf path with a common node with the searched path, which pass the candidate filters.
+     * Of them, the ones which can't beat the found nodes by their path distance are pruned without scoring.
+     *
+     * @param nodeCount      the number of nodes of the document
+     * @param candidateCount the number of candidates
+     * @param scoredCount    the number of node distance invocations, the rest of candidates are pruned
+     * @param resultCount    the number of found nodes
+     */
+    default void scored(long nanos, int nodeCount, int candidateCount, int scoredCount, int resultCount) {
+    }
+
+    /**
+     * The scored nodes are sorted and cut, see {@link PathFinder#getSortedNodes}
+     *
+     * @param scoreCount  the number of distinct scores
+     * @param resultCount the number of nodes in the result
+     */
+    default void sorted(long nanos, int scoreCount, int resultCount) {
+    }
+
+    /**
+     * The phases of a search, each one ends with the call of the method of the same name
+     */
+    enum Phase {
+        PARSED, PREPARED, EXACT_MATCHED, LEAVES_SCANNED, SCORED, SORTED
+    }
+}
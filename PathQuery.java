@@ -0,0 +1,109 @@
+package com.epam.healenium.treecomparing;
+
+/**
+ * The searched {@link Path} compiled for comparison: everything derivable from the searched node is evaluated once,
+ * so the same query can be reused for the search in many documents. Immutable and thread safe, the fingerprint is
+ * evaluated on first use only, as a query built for a single comparison does not need it.
+ */
+public final class PathQuery {
+
+    private final Path path;
+    private final Node node;
+    private final String lowerCaseId;
+    private final String lowerCaseInnerText;
+    private final String[] classes;
+    private final String[] lowerCaseClasses;
+    private final String[] otherAttributeNames;
+    private final String[] lowerCaseOtherAttributeValues;
+    /**
+     * The fingerprint once evaluated, or 0. Volatile for the atomicity of a long, evaluating it twice in a race does
+     * no harm, and a fingerprint of 0 is just evaluated each time
+     */
+    private volatile long fingerprint;
+
+    /**
+     * @param path a collection of nodes that represents the total searched node path; the first node is html tag,
+     *             the last node is the searched node
+     */
+    public PathQuery(Path path) {
+        this.path = path;
+        this.node = path.getLastNode();
+        this.lowerCaseId = toLowerCase(node.getId());
+        this.lowerCaseInnerText = toLowerCase(node.getInnerText());
+        this.classes = node.getSortedClasses();
+        this.lowerCaseClasses = new String[classes.length];
+        for (int i = 0; i < classes.length; i++) {
+            lowerCaseClasses[i] = classes[i].toLowerCase();
+        }
+        this.otherAttributeNames = node.getOtherAttributeNames();
+        String[] otherAttributeValues = node.getOtherAttributeValues();
+        this.lowerCaseOtherAttributeValues = new String[otherAttributeNames.length];
+        for (int i = 0; i < otherAttributeNames.length; i++) {
+            lowerCaseOtherAttributeValues[i] = toLowerCase(otherAttributeValues[i]);
+        }
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * @return the searched node, i.e. the last node of the path
+     */
+    public Node getNode() {
+        return node;
+    }
+
+    public String getLowerCaseId() {
+        return lowerCaseId;
+    }
+
+    public String getLowerCaseInnerText() {
+        return lowerCaseInnerText;
+    }
+
+    /**
+     * @return sorted classes of the searched node, must not be modified
+     */
+    public String[] getClasses() {
+        return classes;
+    }
+
+    /**
+     * @return classes of the searched node in lower case, in the order of {@link #getClasses()}, must not be modified
+     */
+    public String[] getLowerCaseClasses() {
+        return lowerCaseClasses;
+    }
+
+    /**
+     * @return sorted names of other attributes of the searched node, must not be modified
+     */
+    public String[] getOtherAttributeNames() {
+        return otherAttributeNames;
+    }
+
+    /**
+     * @return values of other attributes in lower case, in the order of {@link #getOtherAttributeNames()},
+     *         must not be modified
+     */
+    public String[] getLowerCaseOtherAttributeValues() {
+        return lowerCaseOtherAttributeValues;
+    }
+
+    /**
+     * @return the fingerprint of the content of the searched node
+     */
+    long getFingerprint() {
+        long result = fingerprint;
+        if (result == 0) {
+            result = Fingerprints.of(node);
+            fingerprint = result;
+        }
+        return result;
+    }
+
+    private static String toLowerCase(String value) {
+        return value == null ? null : value.toLowerCase();
+    }
+}
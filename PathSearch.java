@@ -0,0 +1,327 @@
+package com.epam.healenium.treecomparing;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.DoubleAccumulator;
+
+/**
+ * A search of the given path query in a {@link PreparedDocument}, which LCS distances are already found by {@link LeafScan}.
+ * <p>
+ * If a pool is given and the document is larger than the threshold, the candidates are scored by fork-join tasks.
+ * The result doesn't depend on the way the work is split.
+ */
+final class PathSearch {
+
+    private static final int MIN_SCORING_CHUNK = 16;
+    /**
+     * The number of candidates scored between checks of the deadline
+     */
+    private static final int DEADLINE_CHECK_INTERVAL = 16;
+
+    private final PathQuery query;
+    private final PreparedDocument document;
+    private final NodeDistance nodeDistance;
+    private final ForkJoinPool forkJoinPool;
+    private final int[] distances;
+    private final BitSet candidates;
+    private final int pathLengthToCheck;
+    private int candidateCount;
+    private int scoredCount;
+    private boolean bounded;
+    private long deadline;
+    private CancellationToken cancellationToken;
+    private volatile boolean stopped;
+
+    /**
+     * @param query             the searched path
+     * @param document          the document to search in
+     * @param distances         the LCS distances of the path to the nodes of the document
+     * @param nodeDistance      an algorithm to evaluate node likeness by content
+     * @param forkJoinPool      a pool to run the search in, null to run it in the calling thread
+     * @param parallelThreshold the number of nodes up to which the document is searched sequentially
+     */
+    PathSearch(PathQuery query, PreparedDocument document, int[] distances, NodeDistance nodeDistance,
+               ForkJoinPool forkJoinPool, int parallelThreshold) {
+        this(query, document, distances, null, nodeDistance, forkJoinPool, parallelThreshold);
+    }
+
+    /**
+     * @param candidates the positions of the only nodes to score, null to score all the nodes which have a distance;
+     *                   if none of the candidates has a distance, all such nodes are scored. The score of a candidate
+     *                   is the same as in the search of all the nodes.
+     */
+    PathSearch(PathQuery query, PreparedDocument document, int[] distances, BitSet candidates, NodeDistance nodeDistance,
+               ForkJoinPool forkJoinPool, int parallelThreshold) {
+        this.query = query;
+        this.document = document;
+        this.nodeDistance = nodeDistance;
+        this.forkJoinPool = document.size() > parallelThreshold ? forkJoinPool : null;
+        this.distances = distances;
+        this.candidates = candidates != null && hasDistance(distances, candidates) ? candidates : null;
+        int maxLCSDistance = 0;
+        for (int distance : distances) {
+            maxLCSDistance = Math.max(maxLCSDistance, distance);
+        }
+        this.pathLengthToCheck = Math.min(maxLCSDistance, query.getPath().getNodes().length);
+    }
+
+    /**
+     * @return the height of path the LCS distance of candidates is related to
+     */
+    int getPathLengthToCheck() {
+        return pathLengthToCheck;
+    }
+
+    /**
+     * @return the best LCS distance among the leaf paths going through the node, 0 if the node isn't a candidate
+     */
+    int getDistance(int position) {
+        return distances[position];
+    }
+
+    /**
+     * @return the number of nodes to score found by the last search, i.e. which have a distance and pass the candidate
+     *         filter
+     */
+    int getCandidateCount() {
+        return candidateCount;
+    }
+
+    /**
+     * @return the number of nodes scored by the last search, the rest of candidates are skipped by the score bound
+     */
+    int getScoredCount() {
+        return scoredCount;
+    }
+
+    /**
+     * Scores the candidates with the best upper bound of score first and stops as soon as the bound can't beat
+     * the nodes already found.
+     *
+     * @param limit the number of nodes to find
+     * @return the best scored candidates
+     */
+    TopNodes findBest(int limit) {
+        int[] order = orderByDistance();
+        int capacity = Math.min(limit, order.length);
+        TopNodes topNodes;
+        if (forkJoinPool == null) {
+            topNodes = findBest(order, 0, order.length, capacity, null);
+        } else {
+            DoubleAccumulator scoreToBeat = new DoubleAccumulator(Math::max, Double.NEGATIVE_INFINITY);
+            topNodes = forkJoinPool.invoke(new SelectionTask(order, 0, order.length, capacity, scoringChunk(order), scoreToBeat));
+        }
+        candidateCount = order.length;
+        scoredCount = topNodes.getScoredCount();
+        return topNodes;
+    }
+
+    /**
+     * Finds the best candidates as {@link #findBest(int)} does, but stops once the deadline has passed or the token is
+     * cancelled, keeping the candidates scored so far. The first candidate, which has the best upper bound of score,
+     * is scored anyway.
+     *
+     * @param deadline          the {@link System#nanoTime()} to stop at
+     * @param cancellationToken the token to stop on, or null
+     * @return the best scored candidates, see {@link #isStopped()} if the search was stopped
+     */
+    TopNodes findBest(int limit, long deadline, CancellationToken cancellationToken) {
+        this.bounded = true;
+        this.deadline = deadline;
+        this.cancellationToken = cancellationToken;
+        this.stopped = false;
+        return findBest(limit);
+    }
+
+    /**
+     * @return true if the last search was stopped by the deadline or the cancellation before it scored all the
+     *         candidates it needed to
+     */
+    boolean isStopped() {
+        return stopped;
+    }
+
+    /**
+     * @return the score of each candidate by its position in the document, NaN for the rest of nodes
+     */
+    double[] scoreAll() {
+        double[] scores = new double[distances.length];
+        Arrays.fill(scores, Double.NaN);
+        int[] order = orderByDistance();
+        if (forkJoinPool == null) {
+            score(order, 0, order.length, scores);
+        } else {
+            forkJoinPool.invoke(new ScoringTask(order, 0, order.length, scoringChunk(order), scores));
+        }
+        candidateCount = order.length;
+        scoredCount = order.length;
+        return scores;
+    }
+
+    private static boolean hasDistance(int[] distances, BitSet candidates) {
+        for (int i = candidates.nextSetBit(0); i >= 0 && i < distances.length; i = candidates.nextSetBit(i + 1)) {
+            if (distances[i] > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the node is scored by the search
+     */
+    boolean isCandidate(int position) {
+        return distances[position] > 0 && (candidates == null || candidates.get(position));
+    }
+
+    /**
+     * @return positions of candidates ordered by their distance descending and then by position
+     */
+    private int[] orderByDistance() {
+        int maxDistance = 0;
+        for (int distance : distances) {
+            maxDistance = Math.max(maxDistance, distance);
+        }
+        int[] starts = new int[maxDistance + 2];
+        for (int i = 0; i < distances.length; i++) {
+            if (isCandidate(i)) {
+                starts[maxDistance - distances[i] + 1]++;
+            }
+        }
+        for (int i = 1; i < starts.length; i++) {
+            starts[i] += starts[i - 1];
+        }
+        int[] order = new int[starts[starts.length - 1]];
+        for (int i = 0; i < distances.length; i++) {
+            if (isCandidate(i)) {
+                order[starts[maxDistance - distances[i]]++] = i;
+            }
+        }
+        return order;
+    }
+
+    /**
+     * @param scoreToBeat the best score to beat known by other tasks, null if the search runs sequentially
+     */
+    private TopNodes findBest(int[] order, int from, int to, int capacity, DoubleAccumulator scoreToBeat) {
+        TopNodes topNodes = new TopNodes(capacity);
+        int i = from;
+        for (; i < to; i++) {
+            int position = order[i];
+            double maxScore = nodeDistance.maxDistance(distances[position], pathLengthToCheck);
+            if (!topNodes.canAccept(maxScore) || scoreToBeat != null && maxScore < scoreToBeat.get()) {
+                // the rest of candidates have the same or lower distance, so they can't score better
+                break;
+            }
+            if (bounded && i > from && (i - from) % DEADLINE_CHECK_INTERVAL == 0 && shouldStop()) {
+                break;
+            }
+            Node node = document.getNode(position);
+            topNodes.offer(nodeDistance.distance(query, document, position, distances[position], pathLengthToCheck),
+                    position, node);
+            if (scoreToBeat != null) {
+                scoreToBeat.accumulate(topNodes.getScoreToBeat());
+            }
+        }
+        topNodes.addScoredCount(i - from);
+        return topNodes;
+    }
+
+    /**
+     * @return true if the bounded search must stop, which is then known to all its tasks
+     */
+    private boolean shouldStop() {
+        if (!stopped && (System.nanoTime() - deadline >= 0
+                || cancellationToken != null && cancellationToken.isCancelled())) {
+            stopped = true;
+        }
+        return stopped;
+    }
+
+    private void score(int[] order, int from, int to, double[] scores) {
+        for (int i = from; i < to; i++) {
+            int position = order[i];
+            scores[position] = nodeDistance.distance(query, document, position, distances[position],
+                    pathLengthToCheck);
+        }
+    }
+
+    private int scoringChunk(int[] order) {
+        return Math.max(MIN_SCORING_CHUNK, order.length / (forkJoinPool.getParallelism() * 4));
+    }
+
+    /**
+     * Finds the best candidates among order[from, to), merging the best nodes of both halves
+     */
+    private class SelectionTask extends RecursiveTask<TopNodes> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int[] order;
+        private final int from;
+        private final int to;
+        private final int capacity;
+        private final int chunk;
+        private final DoubleAccumulator scoreToBeat;
+
+        SelectionTask(int[] order, int from, int to, int capacity, int chunk, DoubleAccumulator scoreToBeat) {
+            this.order = order;
+            this.from = from;
+            this.to = to;
+            this.capacity = capacity;
+            this.chunk = chunk;
+            this.scoreToBeat = scoreToBeat;
+        }
+
+        @Override
+        protected TopNodes compute() {
+            if (to - from <= chunk) {
+                return findBest(order, from, to, capacity, scoreToBeat);
+            }
+            int middle = (from + to) >>> 1;
+            SelectionTask right = new SelectionTask(order, middle, to, capacity, chunk, scoreToBeat);
+            right.fork();
+            TopNodes topNodes = new SelectionTask(order, from, middle, capacity, chunk, scoreToBeat).compute();
+            TopNodes rightNodes = right.join();
+            topNodes.addAll(rightNodes);
+            topNodes.addScoredCount(rightNodes.getScoredCount());
+            return topNodes;
+        }
+    }
+
+    /**
+     * Scores all the candidates among order[from, to)
+     */
+    private class ScoringTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int[] order;
+        private final int from;
+        private final int to;
+        private final int chunk;
+        private final double[] scores;
+
+        ScoringTask(int[] order, int from, int to, int chunk, double[] scores) {
+            this.order = order;
+            this.from = from;
+            this.to = to;
+            this.chunk = chunk;
+            this.scores = scores;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= chunk) {
+                score(order, from, to, scores);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new ScoringTask(order, from, middle, chunk, scores),
+                    new ScoringTask(order, middle, to, chunk, scores));
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.epam.healenium.treecomparing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The tree of {@link Node}s flattened in document (preorder) order. A node is addressed by its position in that
+ * order, so per-node data of a search can be kept in plain arrays.
+ * <p>
+ * Prepare a document once to search many paths in it, see {@link PathFinder#find(List, PreparedDocument, int)}.
+ * The prepared document is immutable and can be shared between threads.
+ */
+public final class PreparedDocument {
+
+    private final Node[] nodes;
+    private final int[] depths;
+    private final int[] parents;
+    private final int[] ends;
+    private volatile long[] fingerprints;
+    private volatile FingerprintIndex fingerprintIndex;
+    private volatile FeatureIndex featureIndex;
+    private volatile MinHashIndex minHashIndex;
+
+    /**
+     * @param root the root of the parsed DOM
+     */
+    public PreparedDocument(Node root) {
+        List<Node> order = new ArrayList<>();
+        int[] depths = new int[16];
+        Node[] stack = new Node[16];
+        int[] stackDepths = new int[16];
+        int top = 0;
+        stack[0] = root;
+        while (top >= 0) {
+            Node node = stack[top];
+            int depth = stackDepths[top--];
+            if (order.size() == depths.length) {
+                depths = Arrays.copyOf(depths, depths.length * 2);
+            }
+            depths[order.size()] = depth;
+            order.add(node);
+            List<Node> children = node.getChildren();
+            if (children == null) {
+                continue;
+            }
+            if (top + children.size() >= stack.length) {
+                stack = Arrays.copyOf(stack, Math.max(stack.length * 2, top + children.size() + 1));
+                stackDepths = Arrays.copyOf(stackDepths, stack.length);
+            }
+            for (int i = children.size() - 1; i >= 0; i--) {
+                stack[++top] = children.get(i);
+                stackDepths[top] = depth + 1;
+            }
+        }
+        this.nodes = order.toArray(new Node[0]);
+        this.depths = Arrays.copyOf(depths, nodes.length);
+        this.parents = new int[nodes.length];
+        this.ends = new int[nodes.length];
+        int[] ancestors = new int[16];
+        top = -1;
+        for (int i = 0; i < nodes.length; i++) {
+            for (; top >= 0 && this.depths[ancestors[top]] >= this.depths[i]; top--) {
+                ends[ancestors[top]] = i;
+            }
+            parents[i] = top >= 0 ? ancestors[top] : -1;
+            if (++top == ancestors.length) {
+                ancestors = Arrays.copyOf(ancestors, top * 2);
+            }
+            ancestors[top] = i;
+        }
+        for (; top >= 0; top--) {
+            ends[ancestors[top]] = nodes.length;
+        }
+    }
+
+    /**
+     * @param nodes   the nodes in document order
+     * @param depths  the depths of the nodes
+     * @param parents the positions of the parents of the nodes
+     * @param ends    the positions right after the subtrees of the nodes
+     */
+    PreparedDocument(Node[] nodes, int[] depths, int[] parents, int[] ends) {
+        this.nodes = nodes;
+        this.depths = depths;
+        this.parents = parents;
+        this.ends = ends;
+    }
+
+    /**
+     * @return the number of nodes
+     */
+    public int size() {
+        return nodes.length;
+    }
+
+    public Node getNode(int position) {
+        return nodes[position];
+    }
+
+    /**
+     * @return the distance from the root, the root itself has depth 0
+     */
+    public int getDepth(int position) {
+        return depths[position];
+    }
+
+    /**
+     * @return the position of the parent node, -1 for the root
+     */
+    public int getParent(int position) {
+        return parents[position];
+    }
+
+    /**
+     * @return the position right after the last node of the subtree, i.e. the subtree and its leaves are within
+     *         [position, end)
+     */
+    public int getEnd(int position) {
+        return ends[position];
+    }
+
+    public boolean isLeaf(int position) {
+        return ends[position] == position + 1;
+    }
+
+    /**
+     * @return the fingerprint of the content of the node, see {@link Fingerprints#of(Node)}, evaluated for all the
+     *         nodes once it is requested first
+     */
+    long getFingerprint(int position) {
+        long[] values = fingerprints;
+        if (values == null) {
+            values = new long[nodes.length];
+            for (int i = 0; i < nodes.length; i++) {
+                values[i] = Fingerprints.of(nodes[i]);
+            }
+            fingerprints = values;
+        }
+        return values[position];
+    }
+
+    /**
+     * @return the index of the nodes by their content, built once it is requested first
+     */
+    FingerprintIndex getFingerprintIndex() {
+        FingerprintIndex index = fingerprintIndex;
+        if (index == null) {
+            index = new FingerprintIndex(this);
+            fingerprintIndex = index;
+        }
+        return index;
+    }
+
+    /**
+     * @return the inverted index of the nodes by their features, built once it is requested first
+     */
+    FeatureIndex getFeatureIndex() {
+        FeatureIndex index = featureIndex;
+        if (index == null) {
+            index = new FeatureIndex(this);
+            featureIndex = index;
+        }
+        return index;
+    }
+
+    /**
+     * @return the LSH index of the nodes by their text, built once it is requested first with the same parameters
+     */
+    MinHashIndex getMinHashIndex(int bands, int rows) {
+        MinHashIndex index = minHashIndex;
+        if (index == null || index.getBands() != bands || index.getRows() != rows) {
+            index = new MinHashIndex(this, bands, rows);
+            minHashIndex = index;
+        }
+        return index;
+    }
+}
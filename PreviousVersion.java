@@ -0,0 +1,343 @@
+package com.epam.healenium.treecomparing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The nodes of the previous version of a page, which a streaming parser takes instead of building equal nodes of the
+ * new version, see {@link IncrementalDocumentParser}. The parser asks for a node once an element is closed, with the
+ * content of the element as read: the tag, the index, the attributes as written and the range of the document text.
+ * <p>
+ * A leaf is looked up by the hash of its content among the leaves of the previous version in document order. An
+ * element with children is the previous parent of its children, if they all are taken from the previous version and
+ * are all the children of that parent, so the nodes of a subtree of the new version are never built if the subtree
+ * has not changed. Each node of the previous version is taken once.
+ */
+final class PreviousVersion {
+
+    private static final long ID = 0x1D1D1D1D1D1D1D1DL;
+    private static final long CLASS = 0xC1A55C1A55C1A55CL;
+
+    private final Node root;
+    private final Node[] leaves;
+    /**
+     * The next leaf of the same hash in document order, or -1
+     */
+    private final int[] next;
+    private final boolean[] used;
+    /**
+     * Open addressing table of the hashes of the leaves and the first unused leaf of each hash, or -1 once all are used
+     */
+    private final long[] hashes;
+    private final boolean[] filled;
+    private final int[] heads;
+    private int takenNodeCount;
+    private int takenSubtreeCount;
+
+    /**
+     * @param root the root of the previous version
+     */
+    PreviousVersion(Node root) {
+        this.root = root;
+        List<Node> found = new ArrayList<>();
+        collectLeaves(root, found);
+        this.leaves = found.toArray(new Node[0]);
+        this.next = new int[leaves.length];
+        this.used = new boolean[leaves.length];
+        int capacity = Integer.highestOneBit(Math.max(leaves.length, 1) * 2 - 1) << 1;
+        this.hashes = new long[capacity];
+        this.filled = new boolean[capacity];
+        this.heads = new int[capacity];
+        for (int i = leaves.length - 1; i >= 0; i--) {
+            Node leaf = leaves[i];
+            long hash = leafHash(leaf.getTag(), leaf.getIndex() == null ? -1 : leaf.getIndex(), attributeHash(leaf),
+                    Fingerprints.hash(leaf.getInnerTextView()));
+            int slot = slot(hash);
+            next[i] = filled[slot] ? heads[slot] : -1;
+            hashes[slot] = hash;
+            filled[slot] = true;
+            heads[slot] = i;
+        }
+    }
+
+    /**
+     * Takes the node of the previous version equal to the closed element
+     *
+     * @param names    the names of the attributes as written, distinct
+     * @param values   the values of the attributes
+     * @param count    the number of the attributes
+     * @param children the children of the element, already built or taken
+     * @param start    the start of the inner text in the document text
+     * @param end      the end of the inner text in the document text
+     * @return the node of the previous version, or null if the element is to be built
+     */
+    Node take(String tag, int index, String[] names, String[] values, int count, List<Node> children,
+              DocumentText text, int start, int end) {
+        if (!children.isEmpty()) {
+            Node parent = children.get(0).getParent();
+            if (parent == null || parent.getChildren().size() != children.size()) {
+                return null;
+            }
+            // the children being built have no parent yet, the taken ones still have the previous one
+            for (int i = 0; i < children.size(); i++) {
+                if (parent.getChildren().get(i) != children.get(i)) {
+                    return null;
+                }
+            }
+            if (!equalContent(parent, tag, index, names, values, count, text, start, end)) {
+                return null;
+            }
+            takenNodeCount++;
+            // the children are not the roots of the taken subtrees anymore
+            takenSubtreeCount += 1 - children.size();
+            return parent;
+        }
+        long textHash = Fingerprints.hash(text.chars(), start, end);
+        long hash = leafHash(tag, index, attributeHash(names, values, count), textHash);
+        int slot = slot(hash);
+        if (!filled[slot]) {
+            return null;
+        }
+        int head = heads[slot];
+        while (head >= 0 && used[head]) {
+            head = next[head];
+        }
+        heads[slot] = head;
+        for (int i = head; i >= 0; i = next[i]) {
+            if (!used[i] && equalContent(leaves[i], tag, index, names, values, count, text, start, end)) {
+                used[i] = true;
+                takenNodeCount++;
+                takenSubtreeCount++;
+                return leaves[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Links the children of the previous version to their parents again, once the new version is not built by the
+     * streaming parser after all, e.g. it is parsed by Jsoup instead
+     */
+    void restore() {
+        restore(root);
+        takenNodeCount = 0;
+        takenSubtreeCount = 0;
+    }
+
+    /**
+     * @return the number of the taken nodes
+     */
+    int getTakenNodeCount() {
+        return takenNodeCount;
+    }
+
+    /**
+     * @return the number of the largest taken subtrees, whose roots have a new parent or are the new root
+     */
+    int getTakenSubtreeCount() {
+        return takenSubtreeCount;
+    }
+
+    private static void restore(Node node) {
+        for (Node child : node.getChildren()) {
+            child.setParent(node);
+            restore(child);
+        }
+    }
+
+    private static void collectLeaves(Node node, List<Node> leaves) {
+        if (node.getChildren().isEmpty()) {
+            leaves.add(node);
+        }
+        for (Node child : node.getChildren()) {
+            collectLeaves(child, leaves);
+        }
+    }
+
+    /**
+     * @return the slot of the hash, either taken by it or empty
+     */
+    private int slot(long hash) {
+        int mask = hashes.length - 1;
+        int slot = (int) (hash ^ hash >>> 32) & mask;
+        while (filled[slot] && hashes[slot] != hash) {
+            slot = slot + 1 & mask;
+        }
+        return slot;
+    }
+
+    private static long leafHash(String tag, int index, long attributeHash, long textHash) {
+        return Fingerprints.mix(Fingerprints.mix(Fingerprints.mix(Fingerprints.hash(tag), index), attributeHash),
+                textHash);
+    }
+
+    /**
+     * @return the hash of the id, the classes and the other attributes of the node, in any order
+     */
+    private static long attributeHash(Node node) {
+        String id = node.getId();
+        long hash = id == null || id.isEmpty() ? 0 : Fingerprints.mix(ID, Fingerprints.hash(id));
+        for (String value : node.getSortedClasses()) {
+            hash += Fingerprints.mix(CLASS, Fingerprints.hash(value));
+        }
+        String[] names = node.getOtherAttributeNames();
+        String[] values = node.getOtherAttributeValues();
+        for (int i = 0; i < names.length; i++) {
+            hash += Fingerprints.mix(Fingerprints.hash(names[i]), Fingerprints.hash(values[i]));
+        }
+        return hash;
+    }
+
+    /**
+     * @return the same hash as {@link #attributeHash(Node)} of the node built out of the attributes as written, see
+     *         {@link NodeBuilder}
+     */
+    private static long attributeHash(String[] names, String[] values, int count) {
+        long hash = 0;
+        for (int i = 0; i < count; i++) {
+            if ("id".equals(names[i])) {
+                if (!values[i].isEmpty()) {
+                    hash += Fingerprints.mix(ID, Fingerprints.hash(values[i]));
+                }
+            } else if ("class".equals(names[i])) {
+                String value = values[i];
+                for (int start = 0, end; start < value.length(); start = end + 1) {
+                    end = classEnd(value, start);
+                    int from = trimStart(value, start, end);
+                    int to = trimEnd(value, from, end);
+                    if (from < to && !isRepeatedClass(value, from, to)) {
+                        hash += Fingerprints.mix(CLASS, Fingerprints.hash(value, from, to));
+                    }
+                }
+            } else if (!isBlank(names[i])) {
+                hash += Fingerprints.mix(Fingerprints.hash(names[i]), Fingerprints.hash(values[i]));
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * @return true if the node is the one {@link NodeBuilder} builds out of the content
+     */
+    private static boolean equalContent(Node node, String tag, int index, String[] names, String[] values, int count,
+                                        DocumentText text, int start, int end) {
+        if (!tag.equals(node.getTag()) || node.getIndex() == null || node.getIndex() != index
+                || !equalText(node.getInnerTextView(), text.chars(), start, end)) {
+            return false;
+        }
+        String id = "";
+        String classes = null;
+        int otherCount = 0;
+        String[] otherNames = node.getOtherAttributeNames();
+        String[] otherValues = node.getOtherAttributeValues();
+        for (int i = 0; i < count; i++) {
+            if ("id".equals(names[i])) {
+                id = values[i];
+            } else if ("class".equals(names[i])) {
+                classes = values[i];
+            } else if (!isBlank(names[i])) {
+                int j = Arrays.binarySearch(otherNames, names[i]);
+                if (j < 0 || !values[i].equals(otherValues[j])) {
+                    return false;
+                }
+                otherCount++;
+            }
+        }
+        return otherCount == otherNames.length && id.equals(node.getId())
+                && equalClasses(node.getSortedClasses(), classes == null ? "" : classes);
+    }
+
+    /**
+     * @param sorted the sorted distinct classes
+     * @param value  the class attribute as written
+     * @return true if the classes of the attribute are the same as the sorted ones
+     */
+    private static boolean equalClasses(String[] sorted, String value) {
+        boolean[] found = sorted.length == 0 ? null : new boolean[sorted.length];
+        for (int start = 0, end; start < value.length(); start = end + 1) {
+            end = classEnd(value, start);
+            int from = trimStart(value, start, end);
+            int to = trimEnd(value, from, end);
+            if (from < to) {
+                int j = indexOf(sorted, value, from, to);
+                if (j < 0) {
+                    return false;
+                }
+                found[j] = true;
+            }
+        }
+        for (int j = 0; j < sorted.length; j++) {
+            if (!found[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the end of the class which starts at the position of the class attribute, split by spaces as
+     *         {@link NodeBuilder} does
+     */
+    private static int classEnd(String value, int start) {
+        int end = value.indexOf(' ', start);
+        return end < 0 ? value.length() : end;
+    }
+
+    /**
+     * @return true if the class at [from, to) of the class attribute is also written before it
+     */
+    private static boolean isRepeatedClass(String value, int from, int to) {
+        for (int start = 0, end; start < from; start = end + 1) {
+            end = classEnd(value, start);
+            int classFrom = trimStart(value, start, end);
+            int classTo = trimEnd(value, classFrom, end);
+            if (classTo - classFrom == to - from && value.regionMatches(classFrom, value, from, to - from)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int indexOf(String[] sorted, String value, int from, int to) {
+        for (int j = 0; j < sorted.length; j++) {
+            if (sorted[j].length() == to - from && value.regionMatches(from, sorted[j], 0, to - from)) {
+                return j;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean equalText(CharSequence value, CharSequence text, int start, int end) {
+        if (value == null || value.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) != text.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The same as {@link String#trim()}
+     */
+    private static int trimStart(String value, int start, int end) {
+        while (start < end && value.charAt(start) <= ' ') {
+            start++;
+        }
+        return start;
+    }
+
+    private static int trimEnd(String value, int start, int end) {
+        while (end > start && value.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return end;
+    }
+
+    private static boolean isBlank(String value) {
+        return trimStart(value, 0, value.length()) == value.length();
+    }
+}
@@ -0,0 +1,242 @@
+package com.epam.healenium.treecomparing;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Scored nodes of a search kept in parallel arrays: the score, the LCS distance of the path, the position in the
+ * document and the node, ordered by score descending, nodes of equal score in document order. The order is the one of
+ * {@link PathFinder#getSortedNodes}, without boxing of scores and distances and without an object per node.
+ * <p>
+ * {@link #top(int)} and {@link #withMinScore(double)} return views of the same arrays, which are not copied. Immutable.
+ */
+public final class ScoredNodes {
+
+    /**
+     * Receives the scored nodes one by one, see {@link #forEach(Consumer)}
+     */
+    @FunctionalInterface
+    public interface Consumer {
+
+        /**
+         * @param score    the score of the node
+         * @param node     the node
+         * @param distance the LCS distance of the path of the node to the searched path
+         */
+        void accept(double score, Node node, int distance);
+    }
+
+    /**
+     * Below the size insertion sort is used
+     */
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    private final double[] scores;
+    private final int[] distances;
+    private final int[] positions;
+    private final Node[] nodes;
+    private final int from;
+    private final int to;
+    private final int pathLengthToCheck;
+
+    /**
+     * Sorts the arrays in place, they must not be used anymore
+     *
+     * @param scores            the scores of the nodes
+     * @param distances         the LCS distances of the nodes
+     * @param positions         the positions of the nodes in the document, distinct
+     * @param nodes             the nodes
+     * @param size              the number of nodes, which are the first ones in the arrays
+     * @param pathLengthToCheck the height of path the LCS distances are related to
+     */
+    ScoredNodes(double[] scores, int[] distances, int[] positions, Node[] nodes, int size, int pathLengthToCheck) {
+        this(scores, distances, positions, nodes, 0, size, pathLengthToCheck);
+        sort(0, size - 1);
+    }
+
+    private ScoredNodes(double[] scores, int[] distances, int[] positions, Node[] nodes, int from, int to,
+                        int pathLengthToCheck) {
+        this.scores = scores;
+        this.distances = distances;
+        this.positions = positions;
+        this.nodes = nodes;
+        this.from = from;
+        this.to = to;
+        this.pathLengthToCheck = pathLengthToCheck;
+    }
+
+    public int size() {
+        return to - from;
+    }
+
+    public boolean isEmpty() {
+        return from == to;
+    }
+
+    public double getScore(int index) {
+        return scores[checkIndex(index)];
+    }
+
+    /**
+     * @return the best LCS distance among the leaf paths going through the node
+     */
+    public int getDistance(int index) {
+        return distances[checkIndex(index)];
+    }
+
+    /**
+     * @return the position of the node in the {@link PreparedDocument} order
+     */
+    public int getPosition(int index) {
+        return positions[checkIndex(index)];
+    }
+
+    public Node getNode(int index) {
+        return nodes[checkIndex(index)];
+    }
+
+    /**
+     * @return the height of path the LCS distances are related to
+     */
+    public int getPathLengthToCheck() {
+        return pathLengthToCheck;
+    }
+
+    /**
+     * @return the view of the first nodes, i.e. the best ones
+     */
+    public ScoredNodes top(int count) {
+        if (count >= size()) {
+            return this;
+        }
+        return new ScoredNodes(scores, distances, positions, nodes, from, from + Math.max(count, 0), pathLengthToCheck);
+    }
+
+    /**
+     * @return the view of the nodes of at least the given score
+     */
+    public ScoredNodes withMinScore(double minScore) {
+        int low = from;
+        int high = to;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (scores[middle] >= minScore) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low == to ? this : new ScoredNodes(scores, distances, positions, nodes, from, low, pathLengthToCheck);
+    }
+
+    /**
+     * Passes the nodes to the consumer in order
+     */
+    public void forEach(Consumer consumer) {
+        for (int i = from; i < to; i++) {
+            consumer.accept(scores[i], nodes[i], distances[i]);
+        }
+    }
+
+    /**
+     * @return the nodes in order as the result of {@link PathFinder#getSortedNodes}
+     */
+    public List<Scored<Node>> toList() {
+        List<Scored<Node>> list = new ArrayList<>(size());
+        for (int i = from; i < to; i++) {
+            list.add(new Scored<>(scores[i], nodes[i]));
+        }
+        return list;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("ScoredNodes[");
+        for (int i = from; i < to; i++) {
+            builder.append(i > from ? ", " : "").append(scores[i]).append('=').append(nodes[i]);
+        }
+        return builder.append(']').toString();
+    }
+
+    private int checkIndex(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of " + size());
+        }
+        return from + index;
+    }
+
+    /**
+     * Quick sort of [low, high] by score descending and then by position
+     */
+    private void sort(int low, int high) {
+        while (high - low >= INSERTION_SORT_THRESHOLD) {
+            int middle = (low + high) >>> 1;
+            if (precedes(middle, low)) {
+                swap(middle, low);
+            }
+            if (precedes(high, low)) {
+                swap(high, low);
+            }
+            if (precedes(high, middle)) {
+                swap(high, middle);
+            }
+            double pivotScore = scores[middle];
+            int pivotPosition = positions[middle];
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (precedes(i, pivotScore, pivotPosition)) {
+                    i++;
+                }
+                while (precedes(pivotScore, pivotPosition, j)) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(i++, j--);
+                }
+            }
+            // recurse into the smaller part to keep the stack shallow
+            if (j - low < high - i) {
+                sort(low, j);
+                low = i;
+            } else {
+                sort(i, high);
+                high = j;
+            }
+        }
+        for (int i = low + 1; i <= high; i++) {
+            for (int j = i; j > low && precedes(j, j - 1); j--) {
+                swap(j, j - 1);
+            }
+        }
+    }
+
+    private boolean precedes(int i, int j) {
+        return precedes(i, scores[j], positions[j]);
+    }
+
+    private boolean precedes(int i, double score, int position) {
+        int comparison = Double.compare(scores[i], score);
+        return comparison > 0 || comparison == 0 && positions[i] < position;
+    }
+
+    private boolean precedes(double score, int position, int j) {
+        int comparison = Double.compare(score, scores[j]);
+        return comparison > 0 || comparison == 0 && position < positions[j];
+    }
+
+    private void swap(int i, int j) {
+        double score = scores[i];
+        scores[i] = scores[j];
+        scores[j] = score;
+        int distance = distances[i];
+        distances[i] = distances[j];
+        distances[j] = distance;
+        int position = positions[i];
+        positions[i] = positions[j];
+        positions[j] = position;
+        Node node = nodes[i];
+        nodes[i] = nodes[j];
+        nodes[j] = node;
+    }
+}
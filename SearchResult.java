@@ -0,0 +1,27 @@
+package com.epam.healenium.treecomparing;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+
+import java.util.List;
+
+/**
+ * The nodes found by a search bounded in time, see {@link PathFinder#find(PathQuery, PreparedDocument, int, long,
+ * java.util.concurrent.TimeUnit, CancellationToken)}
+ */
+@Getter
+@RequiredArgsConstructor
+@ToString
+public class SearchResult {
+
+    /**
+     * The best nodes found, ordered by likeness descending
+     */
+    private final List<Scored<Node>> nodes;
+    /**
+     * True if the search has completed, false if it was stopped by the deadline or cancelled, so better nodes may
+     * exist among the ones not scored
+     */
+    private final boolean exhaustive;
+}
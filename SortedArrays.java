@@ -0,0 +1,160 @@
+package com.epam.healenium.treecomparing;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.IntFunction;
+
+/**
+ * Read-only {@link Set} and {@link Map} views over sorted arrays of strings, which {@link Node} keeps its classes
+ * and attributes in.
+ */
+final class SortedArrays {
+
+    static final String[] EMPTY = new String[0];
+
+    private SortedArrays() {
+    }
+
+    /**
+     * @param values sorted distinct values
+     * @return a set view of the values
+     */
+    static Set<String> asSet(String[] values) {
+        return new ArraySet(values);
+    }
+
+    /**
+     * @param keys   sorted distinct keys
+     * @param values the values of the keys, in the same order
+     * @return a map view of the keys and values
+     */
+    static Map<String, String> asMap(String[] keys, String[] values) {
+        return new ArrayMap(keys, values);
+    }
+
+    /**
+     * Sorts the first length values and removes duplicates among them
+     *
+     * @return a new array of sorted distinct values
+     */
+    static String[] sortDistinct(String[] values, int length) {
+        if (length == 0) {
+            return EMPTY;
+        }
+        String[] sorted = Arrays.copyOf(values, length);
+        Arrays.sort(sorted);
+        int distinct = 1;
+        for (int i = 1; i < sorted.length; i++) {
+            if (!sorted[i].equals(sorted[distinct - 1])) {
+                sorted[distinct++] = sorted[i];
+            }
+        }
+        return distinct == sorted.length ? sorted : Arrays.copyOf(sorted, distinct);
+    }
+
+    /**
+     * @return the position of value in the sorted array, or a negative number if it is absent
+     */
+    static int indexOf(String[] array, Object value) {
+        if (!(value instanceof String)) {
+            return -1;
+        }
+        return Arrays.binarySearch(array, value);
+    }
+
+    private static final class ArraySet extends AbstractSet<String> {
+
+        private final String[] values;
+
+        ArraySet(String[] values) {
+            this.values = values;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return indexOf(values, o) >= 0;
+        }
+
+        @Override
+        public Iterator<String> iterator() {
+            return new ArrayIterator<>(values.length, i -> values[i]);
+        }
+
+        @Override
+        public int size() {
+            return values.length;
+        }
+    }
+
+    private static final class ArrayMap extends AbstractMap<String, String> {
+
+        private final String[] keys;
+        private final String[] values;
+
+        ArrayMap(String[] keys, String[] values) {
+            this.keys = keys;
+            this.values = values;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return indexOf(keys, key) >= 0;
+        }
+
+        @Override
+        public String get(Object key) {
+            int index = indexOf(keys, key);
+            return index >= 0 ? values[index] : null;
+        }
+
+        @Override
+        public int size() {
+            return keys.length;
+        }
+
+        @Override
+        public Set<Entry<String, String>> entrySet() {
+            return new AbstractSet<Entry<String, String>>() {
+                @Override
+                public Iterator<Entry<String, String>> iterator() {
+                    return new ArrayIterator<>(keys.length, i -> new SimpleImmutableEntry<>(keys[i], values[i]));
+                }
+
+                @Override
+                public int size() {
+                    return keys.length;
+                }
+            };
+        }
+    }
+
+    private static final class ArrayIterator<T> implements Iterator<T> {
+
+        private final int size;
+        private final IntFunction<T> element;
+        private int next;
+
+        ArrayIterator(int size, IntFunction<T> element) {
+            this.size = size;
+            this.element = element;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < size;
+        }
+
+        @Override
+        public T next() {
+            if (next >= size) {
+                throw new NoSuchElementException();
+            }
+            return element.apply(next++);
+        }
+    }
+}
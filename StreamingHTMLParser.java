@@ -0,0 +1,1564 @@
+package com.epam.healenium.treecomparing;
+
+import org.jsoup.internal.StringUtil;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Html parser which builds {@link Node}s right out of the tokens of the page, keeping only the open elements in a
+ * stack. Unlike {@link JsoupHTMLParser}, no DOM of the page is built, so the peak memory is about the size of the
+ * resulting tree.
+ * <p>
+ * The result is the same as of {@link JsoupHTMLParser}: the html element is the root, head and body are implied,
+ * the inner text is joined out of whitespace-normalized text nodes, script and style contents are not text. The tree
+ * is built by the html5 rules for implied and optional tags, void and raw text elements, tables, lists, selects and
+ * unclosed formatting elements, with the same deviations as Jsoup.
+ * <p>
+ * A few rules move nodes which are already built: misnested formatting elements which wrap a block
+ * ({@code <b><div>x</b>y</div>}) are split, and content misplaced inside a table structure ({@code <table><div>}) is
+ * moved before the table. Jsoup also searches only the closest 100 open elements for scopes, builds templates by
+ * their own rules, keeps the tags in a noscript of the head, other than the head ones, as text and takes the html
+ * element out of its stack once it is closed. Once a page needs any of these, it is parsed again by
+ * {@link JsoupHTMLParser}, so the tree is the same, at the cost of a Jsoup DOM for such pages.
+ */
+public class StreamingHTMLParser implements DocumentParser {
+
+    private static final String[] NO_ATTRIBUTES = new String[0];
+    /**
+     * The depth of the stack Jsoup searches for scopes, deeper pages are parsed by Jsoup
+     */
+    private static final int MAX_SCOPE_DEPTH = 100;
+    /**
+     * The number of the last active formatting elements Jsoup looks through to reopen or deduplicate them
+     */
+    private static final int MAX_FORMATTING_LOOKBACK = 12;
+    /**
+     * The number of equal active formatting elements kept, the earliest one is dropped beyond it
+     */
+    private static final int MAX_EQUAL_FORMATTING = 3;
+    /**
+     * The number of the last open elements Jsoup looks through for a definition to close by a new one
+     */
+    private static final int MAX_DEFINITION_LOOKBACK = 24;
+    private static final Set<String> HEAD_CONTENT = set("base", "basefont", "bgsound", "link", "meta", "noframes",
+            "script", "style", "template", "title");
+    private static final Set<String> CLOSING_P = set("address", "article", "aside", "blockquote", "center", "details",
+            "dir", "div", "dl", "fieldset", "figcaption", "figure", "footer", "header", "hgroup", "menu", "nav", "ol",
+            "p", "section", "summary", "ul", "pre", "listing", "form", "xmp", "plaintext", "hr", "table", "h1", "h2",
+            "h3", "h4", "h5", "h6");
+    private static final Set<String> HEADINGS = set("h1", "h2", "h3", "h4", "h5", "h6");
+    private static final Set<String> FORMATTING = set("a", "b", "big", "code", "em", "font", "i", "nobr", "s",
+            "small", "strike", "strong", "tt", "u");
+    private static final Set<String> FORMATTING_MARKERS = set("applet", "marquee", "object");
+    private static final Set<String> RECONSTRUCTING_VOID = set("area", "br", "embed", "img", "keygen", "wbr", "input");
+    private static final Set<String> VOID = set("area", "base", "basefont", "bgsound", "br", "embed", "hr", "img",
+            "input", "keygen", "link", "meta", "param", "source", "track", "wbr");
+    private static final Set<String> BLOCK_END = set("address", "article", "aside", "blockquote", "button", "center",
+            "details", "dir", "div", "dl", "fieldset", "figcaption", "figure", "footer", "header", "hgroup", "listing",
+            "menu", "nav", "ol", "pre", "section", "summary", "ul");
+    private static final Set<String> IMPLIED_END = set("dd", "dt", "li", "optgroup", "option", "p", "rb", "rp", "rt",
+            "rtc");
+    private static final Set<String> TABLE_CONTENT = set("caption", "col", "colgroup", "frame", "head", "tbody", "td",
+            "tfoot", "th", "thead", "tr");
+    private static final Set<String> TABLE_STRUCTURE = set("table", "tbody", "tfoot", "thead", "tr");
+    private static final Set<String> TABLE_SECTIONS = set("tbody", "tfoot", "thead");
+    private static final Set<String> CELLS = set("td", "th");
+    private static final Set<String> LIST_ITEMS = set("li");
+    private static final Set<String> DEFINITIONS = set("dd", "dt");
+    private static final Set<String> CELL_CLOSING = set("caption", "col", "colgroup", "tbody", "td", "tfoot", "th",
+            "thead", "tr");
+    private static final Set<String> SELECT_CLOSING = set("caption", "table", "tbody", "td", "tfoot", "th", "thead",
+            "tr");
+    private static final Set<String> TABLE_IGNORED_END = set("body", "caption", "col", "colgroup", "html", "tbody",
+            "td", "tfoot", "th", "thead", "tr");
+    private static final Set<String> SPECIAL = set("address", "applet", "area", "article", "aside", "base", "basefont",
+            "bgsound", "blockquote", "body", "br", "button", "caption", "center", "col", "colgroup", "command", "dd",
+            "details", "dir", "div", "dl", "dt", "embed", "fieldset", "figcaption", "figure", "footer", "form",
+            "frame", "frameset", "h1", "h2", "h3", "h4", "h5", "h6", "head", "header", "hgroup", "hr", "html",
+            "iframe", "img", "input", "isindex", "li", "link", "listing", "marquee", "menu", "meta", "nav", "noembed",
+            "noframes", "noscript", "object", "ol", "p", "param", "plaintext", "pre", "script", "section", "select",
+            "style", "summary", "table", "tbody", "td", "textarea", "tfoot", "th", "thead", "title", "tr", "ul", "wbr",
+            "xmp");
+    /**
+     * The tags Jsoup knows, an element of any other tag is inserted without reopening the formatting elements
+     */
+    private static final Set<String> KNOWN = set("a", "abbr", "acronym", "address", "applet", "area", "article",
+            "aside", "audio", "b", "base", "basefont", "bdi", "bdo", "bgsound", "big", "blockquote", "body", "br",
+            "button", "canvas", "caption", "center", "cite", "code", "col", "colgroup", "command", "data", "datalist",
+            "dd", "del", "details", "device", "dfn", "dir", "div", "dl", "dt", "em", "embed", "fieldset",
+            "figcaption", "figure", "font", "footer", "form", "frame", "frameset", "h1", "h2", "h3", "h4", "h5", "h6",
+            "head", "header", "hgroup", "hr", "html", "i", "iframe", "img", "input", "ins", "kbd", "keygen", "label",
+            "legend", "li", "link", "listing", "main", "map", "mark", "marquee", "math", "menu", "menuitem", "meta",
+            "meter", "nav", "nobr", "noframes", "noscript", "object", "ol", "optgroup", "option", "output", "p",
+            "param", "plaintext", "pre", "progress", "q", "rp", "rt", "ruby", "s", "samp", "script", "section",
+            "select", "small", "source", "span", "strike", "strong", "style", "sub", "summary", "sup", "svg", "table",
+            "tbody", "td", "template", "textarea", "tfoot", "th", "thead", "time", "title", "tr", "track", "tt", "u",
+            "ul", "var", "video", "wbr");
+    private static final Set<String> DEFAULT_SCOPE = set("applet", "caption", "html", "marquee", "object", "table",
+            "td", "template", "th");
+    private static final Set<String> LIST_ITEM_SCOPE = set("applet", "caption", "html", "marquee", "object", "table",
+            "td", "template", "th", "ol", "ul");
+    private static final Set<String> BUTTON_SCOPE = set("applet", "caption", "html", "marquee", "object", "table",
+            "td", "template", "th", "button");
+    private static final Set<String> TABLE_SCOPE = set("html", "table", "template");
+    private static final Set<String> TABLE_BODY_CONTEXT = set("html", "tbody", "template", "tfoot", "thead");
+    private static final Set<String> ROW_CONTEXT = set("html", "template", "tr");
+
+    private final SymbolTable symbolTable;
+
+    public StreamingHTMLParser() {
+        this(SymbolTable.getDefault());
+    }
+
+    /**
+     * @param symbolTable the table to intern tags, class names and attribute names into
+     */
+    public StreamingHTMLParser(SymbolTable symbolTable) {
+        this.symbolTable = symbolTable;
+    }
+
+    @Override
+    public Node parse(InputStream inputStream) {
+        return parse(inputStream, null);
+    }
+
+    /**
+     * @param previous the previous version of the page to take the nodes of unchanged subtrees from, or null
+     */
+    Node parse(InputStream inputStream, PreviousVersion previous) {
+        try {
+            Reader reader = new InputStreamReader(inputStream, StandardCharsets.UTF_8);
+            char[] chars = new char[8192];
+            int length = 0;
+            for (int read; (read = reader.read(chars, length, chars.length - length)) >= 0; ) {
+                length += read;
+                if (length == chars.length) {
+                    chars = Arrays.copyOf(chars, chars.length * 2);
+                }
+            }
+            TreeBuilder treeBuilder = new TreeBuilder(previous);
+            try {
+                new HtmlTokenizer(chars, length, treeBuilder).run();
+                return treeBuilder.finish();
+            } catch (FallbackException e) {
+                if (previous != null) {
+                    previous.restore();
+                }
+                byte[] bytes = new String(chars, 0, length).getBytes(StandardCharsets.UTF_8);
+                return new JsoupHTMLParser().parse(new ByteArrayInputStream(bytes));
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Set<String> set(String... values) {
+        return new HashSet<>(Arrays.asList(values));
+    }
+
+    private static boolean isWhitespace(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\r' && c != '\f') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The part of the page being read
+     */
+    private enum Mode {
+        BEFORE_HTML, BEFORE_HEAD, IN_HEAD, IN_HEAD_NOSCRIPT, AFTER_HEAD, IN_BODY, AFTER_BODY, AFTER_HTML
+    }
+
+    /**
+     * The context of the current node in the body, which changes how tags are processed
+     */
+    private enum Context {
+        BODY, TABLE, TABLE_BODY, ROW, CELL, CAPTION, COLUMN_GROUP, SELECT
+    }
+
+    /**
+     * Thrown once the page needs a rule which is not applied in a single pass, see the class doc
+     */
+    private static final class FallbackException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        FallbackException() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * An open element
+     */
+    private static final class Frame {
+
+        private final String tag;
+        private final int index;
+        private final int textLength;
+        private final int textCount;
+        private final List<Node> children = new ArrayList<>();
+        private String[] attributeNames;
+        private String[] attributeValues;
+        private int attributeCount;
+        private int elementCount;
+
+        Frame(String tag, String[] attributeNames, String[] attributeValues, int attributeCount, int index,
+              DocumentText text) {
+            this.tag = tag;
+            this.attributeNames = new String[attributeCount];
+            for (int i = 0; i < attributeCount; i++) {
+                this.attributeNames[i] = attributeNames[i].toLowerCase(Locale.ENGLISH);
+            }
+            this.attributeValues = Arrays.copyOf(attributeValues, attributeCount);
+            this.attributeCount = attributeCount;
+            this.index = index;
+            this.textLength = text.length();
+            this.textCount = text.count();
+        }
+
+        /**
+         * Adds the attributes which the element doesn't have yet, keeping the case of the names as Jsoup does
+         */
+        void mergeAttributes(String[] names, String[] values, int count) {
+            for (int i = 0; i < count; i++) {
+                if (indexOf(names[i]) < 0) {
+                    if (attributeCount == attributeNames.length) {
+                        attributeNames = Arrays.copyOf(attributeNames, attributeCount * 2 + 1);
+                        attributeValues = Arrays.copyOf(attributeValues, attributeCount * 2 + 1);
+                    }
+                    attributeNames[attributeCount] = names[i];
+                    attributeValues[attributeCount++] = values[i];
+                }
+            }
+        }
+
+        /**
+         * @return true if the other element has the same tag and attributes, in any order
+         */
+        boolean isSame(Frame other) {
+            if (!tag.equals(other.tag) || attributeCount != other.attributeCount) {
+                return false;
+            }
+            for (int i = 0; i < attributeCount; i++) {
+                int j = other.indexOf(attributeNames[i]);
+                if (j < 0 || !attributeValues[i].equals(other.attributeValues[j])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return the index of the attribute, the names compared ignoring case
+         */
+        private int indexOf(String name) {
+            for (int i = 0; i < attributeCount; i++) {
+                if (attributeNames[i].equalsIgnoreCase(name)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Builds the tree out of the tokens of one page.
+     * <p>
+     * The head and the body are taken out of the stack once they are closed, but are built at the end: the content
+     * which follows them may still be added to them. The whitespace which Jsoup puts into the html element after the
+     * head or the body is kept aside till they are built, so the text of each element stays a single range.
+     */
+    private final class TreeBuilder implements HtmlTokenizer.Handler {
+
+        private final PreviousVersion previous;
+        private final DocumentText text = new DocumentText();
+        private final List<Frame> stack = new ArrayList<>();
+        /**
+         * Active formatting elements, null is a marker of a cell, a caption or an object
+         */
+        private final List<Frame> formatting = new ArrayList<>();
+        private final List<String> htmlText = new ArrayList<>();
+        private Mode mode = Mode.BEFORE_HTML;
+        private boolean rawText;
+        private Frame html;
+        private Frame head;
+        private Frame body;
+        private boolean headClosed;
+        private int headTextEnd;
+        private boolean bodyClosed;
+        private int bodyTextEnd;
+        private Frame lastInserted;
+        /**
+         * The last form inserted, till its end tag
+         */
+        private Frame form;
+        /**
+         * Set while a tag in a table is processed by the body rules, the elements it inserts into a table structure
+         * belong before the table
+         */
+        private boolean fosterParenting;
+        /**
+         * Set once the html element is closed, Jsoup takes it out of the stack then, with the elements open inside
+         */
+        private boolean htmlClosed;
+        private Node root;
+
+        TreeBuilder(PreviousVersion previous) {
+            this.previous = previous;
+        }
+
+        @Override
+        public void text(String value, boolean cdata) {
+            boolean whitespace = !cdata && isWhitespace(value);
+            if (mode == Mode.BEFORE_HTML) {
+                if (whitespace) {
+                    return;
+                }
+                createHtml();
+            }
+            if (mode == Mode.BEFORE_HEAD) {
+                if (whitespace) {
+                    insertText(value, cdata);
+                    return;
+                }
+                createHead();
+            }
+            if (mode == Mode.IN_HEAD_NOSCRIPT) {
+                // Jsoup keeps any text in a noscript of the head, and a CDATA section as written
+                insertText(cdata ? "<![CDATA[" + value + "]]>" : value, false);
+                return;
+            }
+            if (mode == Mode.IN_HEAD) {
+                if (whitespace || rawText) {
+                    insertText(value, cdata);
+                    return;
+                }
+                closeHead();
+            }
+            if (mode == Mode.AFTER_HEAD) {
+                if (rawText) {
+                    insertText(value, cdata);
+                    return;
+                }
+                if (whitespace) {
+                    htmlText.add(value);
+                    return;
+                }
+                createBody(NO_ATTRIBUTES, NO_ATTRIBUTES, 0);
+            }
+            if (mode == Mode.AFTER_BODY) {
+                if (whitespace) {
+                    if (!bodyClosed) {
+                        insertText(value, false);
+                    } else if (!htmlClosed) {
+                        htmlText.add(value);
+                    }
+                    return;
+                }
+                reopenBody();
+            } else if (mode == Mode.AFTER_HTML) {
+                if (whitespace) {
+                    // Jsoup adds it to the elements left open, not to the closed html element
+                    if (current() != html) {
+                        insertText(value, false);
+                    }
+                    return;
+                }
+                reopenBody();
+            }
+            if (!rawText && !whitespace && "colgroup".equals(current().tag)) {
+                pop();
+            }
+            if (!rawText && TABLE_STRUCTURE.contains(current().tag)) {
+                if (!whitespace) {
+                    // as in Jsoup, the text stays in the table, but the formatting elements it reopens are moved
+                    fosterParenting = true;
+                    try {
+                        reconstructFormatting();
+                    } finally {
+                        fosterParenting = false;
+                    }
+                }
+            } else if (!rawText && context() != Context.SELECT) {
+                reconstructFormatting();
+            }
+            insertText(value, cdata);
+        }
+
+        @Override
+        public int startTag(String name, String[] names, String[] values, int count, boolean selfClosing) {
+            lastInserted = null;
+            int contentModel = processStartTag(symbolTable.intern(name), names, values, count);
+            int model = contentModel & ~HtmlTokenizer.SKIP_NEWLINE;
+            // plaintext is read as text by the body rules, only the other content is raw
+            rawText = model != HtmlTokenizer.DATA && model != HtmlTokenizer.PLAINTEXT;
+            if (selfClosing && lastInserted != null && lastInserted == current()) {
+                // as Jsoup does, a self closing tag of a non-void element is closed by an implied end tag
+                endTag(name);
+            }
+            rawText &= !selfClosing;
+            return contentModel;
+        }
+
+        @Override
+        public void endTag(String name) {
+            if (rawText) {
+                rawText = false;
+                pop();
+                if (mode == Mode.AFTER_HEAD && current() == head) {
+                    closeHead();
+                }
+                return;
+            }
+            processEndTag(name);
+        }
+
+        /**
+         * @return the root html node
+         */
+        Node finish() {
+            if (mode == Mode.BEFORE_HTML) {
+                createHtml();
+            }
+            if (mode == Mode.BEFORE_HEAD) {
+                createHead();
+            }
+            if (mode == Mode.IN_HEAD_NOSCRIPT) {
+                // as Jsoup does, the end of the page closes a raw text element and is added to an open noscript of
+                // the head as an empty text
+                if (rawText) {
+                    pop();
+                }
+                insertText("", false);
+                mode = Mode.IN_HEAD;
+            }
+            if (mode == Mode.IN_HEAD) {
+                closeHead();
+            }
+            if (mode == Mode.AFTER_HEAD) {
+                while (current() != html) {
+                    if (current() == head) {
+                        closeHead();
+                    } else {
+                        pop();
+                    }
+                }
+                createBody(NO_ATTRIBUTES, NO_ATTRIBUTES, 0);
+            }
+            while (current() != html) {
+                if (current() == body) {
+                    closeBody();
+                } else {
+                    pop();
+                }
+            }
+            html.children.add(build(body, bodyTextEnd));
+            appendHtmlText();
+            pop();
+            text.trimToSize();
+            return root;
+        }
+
+        private int processStartTag(String name, String[] names, String[] values, int count) {
+            if ("isindex".equals(name)) {
+                // Jsoup expands it into a form with a prompt and an input, which is not worth the rules
+                throw new FallbackException();
+            }
+            if (htmlClosed && ("html".equals(name) || "body".equals(name) || "frameset".equals(name))) {
+                // Jsoup applies these to the bottom of its stack, which is not the html element anymore
+                throw new FallbackException();
+            }
+            if (mode == Mode.BEFORE_HTML) {
+                if ("html".equals(name)) {
+                    html = insert(name, names, values, count);
+                    mode = Mode.BEFORE_HEAD;
+                    return HtmlTokenizer.DATA;
+                }
+                createHtml();
+            }
+            if (mode == Mode.BEFORE_HEAD) {
+                if ("html".equals(name)) {
+                    html.mergeAttributes(names, values, count);
+                    return HtmlTokenizer.DATA;
+                }
+                if ("head".equals(name)) {
+                    head = insert(name, names, values, count);
+                    mode = Mode.IN_HEAD;
+                    return HtmlTokenizer.DATA;
+                }
+                createHead();
+            }
+            if (mode == Mode.IN_HEAD_NOSCRIPT) {
+                return startTagInHeadNoscript(name, names, values, count);
+            }
+            if (mode == Mode.IN_HEAD) {
+                int contentModel = startTagInHead(name, names, values, count);
+                if (contentModel >= 0) {
+                    return contentModel;
+                }
+                closeHead();
+            }
+            if (mode == Mode.AFTER_HEAD) {
+                if ("html".equals(name)) {
+                    html.mergeAttributes(names, values, count);
+                    return HtmlTokenizer.DATA;
+                }
+                if ("body".equals(name)) {
+                    createBody(names, values, count);
+                    return HtmlTokenizer.DATA;
+                }
+                if ("head".equals(name)) {
+                    return HtmlTokenizer.DATA;
+                }
+                if (HEAD_CONTENT.contains(name)) {
+                    // head content after the head still goes to the head
+                    stack.add(head);
+                    int contentModel = startTagInHead(name, names, values, count);
+                    if (current() == head) {
+                        closeHead();
+                    }
+                    return contentModel;
+                }
+                createBody(NO_ATTRIBUTES, NO_ATTRIBUTES, 0);
+            }
+            if (mode == Mode.AFTER_BODY || mode == Mode.AFTER_HTML) {
+                if ("html".equals(name)) {
+                    html.mergeAttributes(names, values, count);
+                    return HtmlTokenizer.DATA;
+                }
+                reopenBody();
+            }
+            return startTagInBody(name, names, values, count);
+        }
+
+        /**
+         * @return the content model, or -1 if the tag closes the head
+         */
+        private int startTagInHead(String name, String[] names, String[] values, int count) {
+            switch (name) {
+                case "html":
+                    html.mergeAttributes(names, values, count);
+                    return HtmlTokenizer.DATA;
+                case "base":
+                case "basefont":
+                case "bgsound":
+                case "link":
+                case "meta":
+                    insertVoid(name, names, values, count);
+                    return HtmlTokenizer.DATA;
+                case "title":
+                    insert(name, names, values, count);
+                    return HtmlTokenizer.RCDATA;
+                case "noframes":
+                    insert(name, names, values, count);
+                    return HtmlTokenizer.RAWTEXT;
+                case "style":
+                case "script":
+                    insert(name, names, values, count);
+                    return HtmlTokenizer.SCRIPT_DATA;
+                case "noscript":
+                    insert(name, names, values, count);
+                    mode = Mode.IN_HEAD_NOSCRIPT;
+                    return HtmlTokenizer.DATA;
+                case "template":
+                    throw new FallbackException();
+                case "head":
+                    return HtmlTokenizer.DATA;
+                default:
+                    return -1;
+            }
+        }
+
+        private int startTagInHeadNoscript(String name, String[] names, String[] values, int count) {
+            switch (name) {
+                case "html":
+                    html.mergeAttributes(names, values, count);
+                    return HtmlTokenizer.DATA;
+                case "basefont":
+                case "bgsound":
+                case "link":
+                case "meta":
+                case "noframes":
+                case "style":
+                    return startTagInHead(name, names, values, count);
+                case "head":
+                case "noscript":
+                    return HtmlTokenizer.DATA;
+                default:
+                    // Jsoup keeps the tag as text
+                    throw new FallbackException();
+            }
+        }
+
+        private int startTagInBody(String name, String[] names, String[] values, int count) {
+            switch (context()) {
+                case SELECT:
+                    return startTagInSelect(name, names, values, count);
+                case TABLE:
+                case TABLE_BODY:
+                case ROW:
+                case COLUMN_GROUP:
+                    int contentModel = startTagInTable(name, names, values, count);
+                    if (contentModel >= 0) {
+                        return contentModel;
+                    }
+                    fosterParenting = true;
+                    try {
+                        return startTagByBodyRules(name, names, values, count);
+                    } finally {
+                        fosterParenting = false;
+                    }
+                case CELL:
+                    if (CELL_CLOSING.contains(name)) {
+                        closeCell();
+                        return startTagInBody(name, names, values, count);
+                    }
+                    break;
+                case CAPTION:
+                    if (CELL_CLOSING.contains(name)) {
+                        closeCaption();
+                        return startTagInBody(name, names, values, count);
+                    }
+                    break;
+                default:
+                    break;
+            }
+            return startTagByBodyRules(name, names, values, count);
+        }
+
+        private int startTagByBodyRules(String name, String[] names, String[] values, int count) {
+            if ("form".equals(name) && form != null) {
+                return HtmlTokenizer.DATA;
+            }
+            if (CLOSING_P.contains(name)) {
+                closeParagraph();
+            }
+            if (FORMATTING.contains(name)) {
+                if ("a".equals(name) && activeFormatting(name) != null) {
+                    endTagFormatting(name);
+                }
+                reconstructFormatting();
+                if ("nobr".equals(name) && inScope(name, DEFAULT_SCOPE)) {
+                    endTagFormatting(name);
+                    reconstructFormatting();
+                }
+                pushFormatting(insert(name, names, values, count));
+                return HtmlTokenizer.DATA;
+            }
+            if (HEAD_CONTENT.contains(name)) {
+                return startTagInHead(name, names, values, count);
+            }
+            switch (name) {
+                case "html":
+                    html.mergeAttributes(names, values, count);
+                    return HtmlTokenizer.DATA;
+                case "body":
+                    if (body != null) {
+                        body.mergeAttributes(names, values, count);
+                    }
+                    return HtmlTokenizer.DATA;
+                case "frameset":
+                    return HtmlTokenizer.DATA;
+                case "h1":
+                case "h2":
+                case "h3":
+                case "h4":
+                case "h5":
+                case "h6":
+                    if (HEADINGS.contains(current().tag)) {
+                        pop();
+                    }
+                    insert(name, names, values, count);
+                    return HtmlTokenizer.DATA;
+                case "pre":
+                case "listing":
+                    insert(name, names, values, count);
+                    return HtmlTokenizer.DATA | HtmlTokenizer.SKIP_NEWLINE;
+                case "li":
+                    closeListItem(LIST_ITEMS, stack.size());
+                    closeParagraph();
+                    insert(name, names, values, count);
+                    return HtmlTokenizer.DATA;
+                case "dd":
+                case "dt":
+                    closeListItem(DEFINITIONS, MAX_DEFINITION_LOOKBACK + 1);
+                    closeParagraph();
+                    insert(name, names, values, count);
+                    return HtmlTokenizer.DATA;
+                case "plaintext":
+                    insert(name, names, values, count);
+                    return HtmlTokenizer.PLAINTEXT;
+                case "form":
+                    form = insert(name, names, values, count);
+                    // Jsoup keeps a self closing form open
+                    lastInserted = null;
+                    return HtmlTokenizer.DATA;
+                case "button":
+                    if (inScope(name, DEFAULT_SCOPE)) {
+                        popUntil(name);
+                    }
+                    reconstructFormatting();
+                    insert(name, names, values, count);
+                    return HtmlTokenizer.DATA;
+                case "applet":
+                case "marquee":
+                case "object":
+                    reconstructFormatting();
+                    insert(name, names, values, count);
+                    formatting.add(null);
+                    return HtmlTokenizer.DATA;
+                case "image":
+                    if (indexOf("svg") >= 0) {
+                        insert(name, names, values, count);
+                        return HtmlTokenizer.DATA;
+                    }
+                    reconstructFormatting();
+                    insertVoid(symbolTable.intern("img"), names, values, count);
+                    return HtmlTokenizer.DATA;
+                case "textarea":
+                    insert(name, names, values, count);
+                    return HtmlTokenizer.RCDATA;
+                case "xmp":
+                    reconstructFormatting();
+                    insert(name, names, values, count);
+                    return HtmlTokenizer.RAWTEXT;
+                case "iframe":
+                case "noembed":
+                    insert(name, names, values, count);
+                    return HtmlTokenizer.RAWTEXT;
+                case "option":
+                case "optgroup":
+                    if ("option".equals(current().tag)) {
+                        pop();
+                    }
+                    reconstructFormatting();
+                    insert(name, names, values, count);
+                    return HtmlTokenizer.DATA;
+                case "rp":
+                case "rt":
+                    // as in Jsoup, the tags are dropped out of a ruby
+                    if (inScope("ruby", DEFAULT_SCOPE)) {
+                        while (IMPLIED_END.contains(current().tag)) {
+                            pop();
+                        }
+                        while (!"ruby".equals(current().tag)) {
+                            pop();
+                        }
+                        insert(name, names, values, count);
+                    }
+                    return HtmlTokenizer.DATA;
+                default:
+                    if (TABLE_CONTENT.contains(name)) {
+                        return HtmlTokenizer.DATA;
+                    }
+                    if (VOID.contains(name)) {
+                        if (RECONSTRUCTING_VOID.contains(name)) {
+                            reconstructFormatting();
+                        }
+                        insertVoid(name, names, values, count);
+                    } else if (KNOWN.contains(name) && !CLOSING_P.contains(name)) {
+                        reconstructFormatting();
+                        insert(name, names, values, count);
+                    } else {
+                        insert(name, names, values, count);
+                    }
+                    return HtmlTokenizer.DATA;
+            }
+        }
+
+        /**
+         * @return the content model, or -1 to process the tag by the body rules
+         */
+        private int startTagInTable(String name, String[] names, String[] values, int count) {
+            Context context = context();
+            if (context == Context.COLUMN_GROUP) {
+                if ("col".equals(name)) {
+                    insertVoid(name, names, values, count);
+                    return HtmlTokenizer.DATA;
+                }
+                pop();
+                return startTagInBody(name, names, values, count);
+            }
+            if (context == Context.ROW) {
+                if (CELLS.contains(name)) {
+                    clearTo(ROW_CONTEXT);
+                    insert(name, names, values, count);
+                    formatting.add(null);
+                    return HtmlTokenizer.DATA;
+                }
+                if (CELL_CLOSING.contains(name)) {
+                    clearTo(ROW_CONTEXT);
+                    pop();
+                    return startTagInBody(name, names, values, count);
+                }
+            }
+            if (context == Context.TABLE_BODY) {
+                if ("tr".equals(name)) {
+                    clearTo(TABLE_BODY_CONTEXT);
+                    insert(name, names, values, count);
+                    return HtmlTokenizer.DATA;
+                }
+                if (CELLS.contains(name)) {
+                    clearTo(TABLE_BODY_CONTEXT);
+                    insert(symbolTable.intern("tr"), NO_ATTRIBUTES, NO_ATTRIBUTES, 0);
+                    return startTagInBody(name, names, values, count);
+                }
+                if (CELL_CLOSING.contains(name)) {
+                    clearTo(TABLE_BODY_CONTEXT);
+                    pop();
+                    return startTagInBody(name, names, values, count);
+                }
+            }
+            switch (name) {
+                case "caption":
+                    clearTo(TABLE_SCOPE);
+                    insert(name, names, values, count);
+                    formatting.add(null);
+                    return HtmlTokenizer.DATA;
+                case "colgroup":
+                case "tbody":
+                case "tfoot":
+                case "thead":
+                    clearTo(TABLE_SCOPE);
+                    insert(name, names, values, count);
+                    return HtmlTokenizer.DATA;
+                case "col":
+                    clearTo(TABLE_SCOPE);
+                    insert(symbolTable.intern("colgroup"), NO_ATTRIBUTES, NO_ATTRIBUTES, 0);
+                    return startTagInBody(name, names, values, count);
+                case "tr":
+                case "td":
+                case "th":
+                    clearTo(TABLE_SCOPE);
+                    insert(symbolTable.intern("tbody"), NO_ATTRIBUTES, NO_ATTRIBUTES, 0);
+                    return startTagInBody(name, names, values, count);
+                case "table":
+                    if (inScope(name, TABLE_SCOPE)) {
+                        popUntil(name);
+                        return startTagInBody(name, names, values, count);
+                    }
+                    return HtmlTokenizer.DATA;
+                case "style":
+                case "script":
+                case "template":
+                    return startTagInHead(name, names, values, count);
+                case "input":
+                    for (int i = 0; i < count; i++) {
+                        if ("type".equals(names[i]) && "hidden".equalsIgnoreCase(values[i])) {
+                            insertVoid(name, names, values, count);
+                            return HtmlTokenizer.DATA;
+                        }
+                    }
+                    return -1;
+                case "form":
+                    if (form == null) {
+                        form = insert(name, names, values, count);
+                        pop();
+                    }
+                    return HtmlTokenizer.DATA;
+                default:
+                    return -1;
+            }
+        }
+
+        private int startTagInSelect(String name, String[] names, String[] values, int count) {
+            switch (name) {
+                case "html":
+                    html.mergeAttributes(names, values, count);
+                    return HtmlTokenizer.DATA;
+                case "option":
+                    if ("option".equals(current().tag)) {
+                        pop();
+                    }
+                    insert(name, names, values, count);
+                    return HtmlTokenizer.DATA;
+                case "optgroup":
+                    if ("option".equals(current().tag)) {
+                        pop();
+                    }
+                    if ("optgroup".equals(current().tag)) {
+                        pop();
+                    }
+                    insert(name, names, values, count);
+                    return HtmlTokenizer.DATA;
+                case "select":
+                    popUntil(name);
+                    return HtmlTokenizer.DATA;
+                case "input":
+                case "keygen":
+                case "textarea":
+                    popUntil("select");
+                    return startTagInBody(name, names, values, count);
+                case "script":
+                    insert(name, names, values, count);
+                    return HtmlTokenizer.SCRIPT_DATA;
+                case "template":
+                    throw new FallbackException();
+                default:
+                    if (SELECT_CLOSING.contains(name) && isSelectInTable()) {
+                        popUntil("select");
+                        return startTagInBody(name, names, values, count);
+                    }
+                    return HtmlTokenizer.DATA;
+            }
+        }
+
+        /**
+         * @return true if the select was opened in a cell or a caption, where the table tags close it
+         */
+        private boolean isSelectInTable() {
+            for (int i = indexOf("select") - 1; i > 0; i--) {
+                String tag = stack.get(i).tag;
+                if (CELLS.contains(tag) || "caption".equals(tag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void processEndTag(String name) {
+            if (mode == Mode.BEFORE_HTML) {
+                if (!"head".equals(name) && !"body".equals(name) && !"html".equals(name) && !"br".equals(name)) {
+                    return;
+                }
+                createHtml();
+            }
+            if (mode == Mode.BEFORE_HEAD) {
+                if (!"head".equals(name) && !"body".equals(name) && !"html".equals(name) && !"br".equals(name)) {
+                    return;
+                }
+                createHead();
+            }
+            if (mode == Mode.IN_HEAD_NOSCRIPT) {
+                if ("noscript".equals(name)) {
+                    pop();
+                    mode = Mode.IN_HEAD;
+                } else if ("br".equals(name)) {
+                    // Jsoup keeps the tag as text
+                    throw new FallbackException();
+                }
+                return;
+            }
+            if (mode == Mode.IN_HEAD) {
+                if ("head".equals(name)) {
+                    closeHead();
+                    return;
+                }
+                if ("noscript".equals(name) || "template".equals(name)) {
+                    if (name.equals(current().tag)) {
+                        pop();
+                    }
+                    return;
+                }
+                if (!"body".equals(name) && !"html".equals(name) && !"br".equals(name)) {
+                    return;
+                }
+                closeHead();
+            }
+            if (mode == Mode.AFTER_HEAD) {
+                if (!"body".equals(name) && !"html".equals(name) && !"br".equals(name)) {
+                    return;
+                }
+                createBody(NO_ATTRIBUTES, NO_ATTRIBUTES, 0);
+            }
+            if (mode == Mode.AFTER_BODY) {
+                if ("html".equals(name)) {
+                    closeHtml();
+                    return;
+                }
+                reopenBody();
+            } else if (mode == Mode.AFTER_HTML) {
+                reopenBody();
+            }
+            endTagInBody(name);
+        }
+
+        private void endTagInBody(String name) {
+            switch (context()) {
+                case SELECT:
+                    if ("option".equals(name) && "option".equals(current().tag)) {
+                        pop();
+                    } else if ("optgroup".equals(name)) {
+                        // an option in the group is closed by the end of the group
+                        if ("option".equals(current().tag) && "optgroup".equals(stack.get(stack.size() - 2).tag)) {
+                            pop();
+                        }
+                        if ("optgroup".equals(current().tag)) {
+                            pop();
+                        }
+                    } else if ("select".equals(name)) {
+                        popUntil(name);
+                    } else if (SELECT_CLOSING.contains(name) && isSelectInTable() && inScope(name, TABLE_SCOPE)) {
+                        popUntil("select");
+                        endTagInBody(name);
+                    }
+                    return;
+                case CELL:
+                    if (CELLS.contains(name)) {
+                        if (inScope(name, TABLE_SCOPE)) {
+                            closeCell();
+                        }
+                        return;
+                    }
+                    if ("table".equals(name) || TABLE_SECTIONS.contains(name) || "tr".equals(name)) {
+                        if (inScope(name, TABLE_SCOPE)) {
+                            closeCell();
+                            endTagInBody(name);
+                        }
+                        return;
+                    }
+                    if ("body".equals(name) || "caption".equals(name) || "col".equals(name)
+                            || "colgroup".equals(name) || "html".equals(name)) {
+                        return;
+                    }
+                    break;
+                case CAPTION:
+                    if ("caption".equals(name)) {
+                        closeCaption();
+                        return;
+                    }
+                    if ("table".equals(name)) {
+                        closeCaption();
+                        endTagInBody(name);
+                        return;
+                    }
+                    if (TABLE_IGNORED_END.contains(name)) {
+                        return;
+                    }
+                    break;
+                case COLUMN_GROUP:
+                    if ("colgroup".equals(name)) {
+                        pop();
+                        return;
+                    }
+                    if ("template".equals(name)) {
+                        return;
+                    }
+                    // Jsoup closes the column group by an end tag of a col too
+                    pop();
+                    endTagInBody(name);
+                    return;
+                case ROW:
+                    if ("tr".equals(name)) {
+                        clearTo(ROW_CONTEXT);
+                        pop();
+                        return;
+                    }
+                    if ("table".equals(name)) {
+                        clearTo(ROW_CONTEXT);
+                        pop();
+                        endTagInBody(name);
+                        return;
+                    }
+                    if (TABLE_SECTIONS.contains(name)) {
+                        // Jsoup closes only the row, the section is left open
+                        if (inScope(name, TABLE_SCOPE)) {
+                            clearTo(ROW_CONTEXT);
+                            pop();
+                        }
+                        return;
+                    }
+                    if (TABLE_IGNORED_END.contains(name)) {
+                        return;
+                    }
+                    break;
+                case TABLE_BODY:
+                    if (TABLE_SECTIONS.contains(name)) {
+                        if (inScope(name, TABLE_SCOPE)) {
+                            clearTo(TABLE_BODY_CONTEXT);
+                            pop();
+                        }
+                        return;
+                    }
+                    if ("table".equals(name)) {
+                        clearTo(TABLE_BODY_CONTEXT);
+                        pop();
+                        endTagInBody(name);
+                        return;
+                    }
+                    if (TABLE_IGNORED_END.contains(name)) {
+                        return;
+                    }
+                    break;
+                case TABLE:
+                    if ("table".equals(name)) {
+                        if (inScope(name, TABLE_SCOPE)) {
+                            popUntil(name);
+                        }
+                        return;
+                    }
+                    if (TABLE_IGNORED_END.contains(name)) {
+                        return;
+                    }
+                    break;
+                default:
+                    break;
+            }
+            switch (context()) {
+                case TABLE:
+                case TABLE_BODY:
+                case ROW:
+                    fosterParenting = true;
+                    try {
+                        endTagByBodyRules(name);
+                    } finally {
+                        fosterParenting = false;
+                    }
+                    break;
+                default:
+                    endTagByBodyRules(name);
+                    break;
+            }
+        }
+
+        private void endTagByBodyRules(String name) {
+            if (FORMATTING.contains(name)) {
+                endTagFormatting(name);
+            } else if ("body".equals(name)) {
+                if (inScope(name, DEFAULT_SCOPE)) {
+                    endTagBody();
+                }
+            } else if ("html".equals(name)) {
+                if (inScope("body", DEFAULT_SCOPE)) {
+                    endTagBody();
+                    closeHtml();
+                }
+            } else if ("form".equals(name)) {
+                endTagForm();
+            } else if ("p".equals(name)) {
+                if (!inScope(name, BUTTON_SCOPE)) {
+                    insert(symbolTable.intern(name), NO_ATTRIBUTES, NO_ATTRIBUTES, 0);
+                }
+                popUntil(name);
+            } else if ("li".equals(name)) {
+                if (inScope(name, LIST_ITEM_SCOPE)) {
+                    popUntil(name);
+                }
+            } else if ("dd".equals(name) || "dt".equals(name)) {
+                if (inScope(name, DEFAULT_SCOPE)) {
+                    popUntil(name);
+                }
+            } else if (HEADINGS.contains(name)) {
+                if (inScope(HEADINGS, DEFAULT_SCOPE)) {
+                    popUntil(HEADINGS);
+                }
+            } else if ("br".equals(name)) {
+                reconstructFormatting();
+                insertVoid(symbolTable.intern(name), NO_ATTRIBUTES, NO_ATTRIBUTES, 0);
+            } else if (FORMATTING_MARKERS.contains(name)) {
+                if (inScope(name, DEFAULT_SCOPE)) {
+                    popUntil(name);
+                    clearFormattingToMarker();
+                }
+            } else if (BLOCK_END.contains(name)) {
+                if (inScope(name, DEFAULT_SCOPE)) {
+                    popUntil(name);
+                }
+            } else {
+                endTagOther(name);
+            }
+        }
+
+        /**
+         * Closes the current form. Jsoup takes it out of the stack without the elements open inside of it
+         */
+        private void endTagForm() {
+            Frame element = form;
+            form = null;
+            if (element == null || !inScope("form", DEFAULT_SCOPE)) {
+                return;
+            }
+            while (IMPLIED_END.contains(current().tag)) {
+                pop();
+            }
+            if (current() == element) {
+                pop();
+            } else if (stack.contains(element)) {
+                throw new FallbackException();
+            }
+        }
+
+        /**
+         * Closes the element of the name, unless a special element is open inside of it
+         */
+        private void endTagOther(String name) {
+            for (int i = stack.size() - 1; i > 0; i--) {
+                String tag = stack.get(i).tag;
+                if (tag.equals(name)) {
+                    popUntil(name);
+                    return;
+                }
+                if (SPECIAL.contains(tag)) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Closes the active formatting element of the name, the elements open inside of it are closed as well
+         */
+        private void endTagFormatting(String name) {
+            Frame element = activeFormatting(name);
+            if (element == null) {
+                endTagOther(name);
+                return;
+            }
+            if (!stack.contains(element)) {
+                formatting.remove(element);
+                return;
+            }
+            if (!inScope(name, DEFAULT_SCOPE)) {
+                return;
+            }
+            for (int i = stack.size() - 1; stack.get(i) != element; i--) {
+                if (SPECIAL.contains(stack.get(i).tag)) {
+                    // the block is split by the adoption agency algorithm
+                    throw new FallbackException();
+                }
+            }
+            while (current() != element) {
+                pop();
+            }
+            pop();
+            formatting.remove(element);
+        }
+
+        /**
+         * Closes the elements in the body, unless a special element is open, the body itself is closed as well
+         */
+        private void endTagBody() {
+            for (int i = stack.size() - 1; i > 0; i--) {
+                Frame frame = stack.get(i);
+                if (frame == body) {
+                    while (current() != body) {
+                        pop();
+                    }
+                    closeBody();
+                    break;
+                }
+                if (SPECIAL.contains(frame.tag)) {
+                    break;
+                }
+            }
+            mode = Mode.AFTER_BODY;
+        }
+
+        /**
+         * @return the context by the closest open table or select element
+         */
+        private Context context() {
+            for (int i = stack.size() - 1; i > 0; i--) {
+                switch (stack.get(i).tag) {
+                    case "select":
+                        return Context.SELECT;
+                    case "td":
+                    case "th":
+                        return Context.CELL;
+                    case "tr":
+                        return Context.ROW;
+                    case "tbody":
+                    case "thead":
+                    case "tfoot":
+                        return Context.TABLE_BODY;
+                    case "caption":
+                        return Context.CAPTION;
+                    case "colgroup":
+                        return Context.COLUMN_GROUP;
+                    case "table":
+                        return Context.TABLE;
+                    default:
+                        break;
+                }
+            }
+            return Context.BODY;
+        }
+
+        private boolean inScope(String name, Set<String> boundaries) {
+            for (int i = stack.size() - 1; i >= 0; i--) {
+                String tag = stack.get(i).tag;
+                if (tag.equals(name)) {
+                    return true;
+                }
+                if (boundaries.contains(tag)) {
+                    return false;
+                }
+            }
+            return false;
+        }
+
+        private boolean inScope(Set<String> names, Set<String> boundaries) {
+            for (int i = stack.size() - 1; i >= 0; i--) {
+                String tag = stack.get(i).tag;
+                if (names.contains(tag)) {
+                    return true;
+                }
+                if (boundaries.contains(tag)) {
+                    return false;
+                }
+            }
+            return false;
+        }
+
+        private int indexOf(String name) {
+            for (int i = stack.size() - 1; i >= 0; i--) {
+                if (stack.get(i).tag.equals(name)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private void closeParagraph() {
+            if (inScope("p", BUTTON_SCOPE)) {
+                popUntil("p");
+            }
+        }
+
+        /**
+         * @param depth the number of the last open elements to look through
+         */
+        private void closeListItem(Set<String> names, int depth) {
+            for (int i = stack.size() - 1, last = Math.max(stack.size() - depth, 1); i >= last; i--) {
+                String tag = stack.get(i).tag;
+                if (names.contains(tag)) {
+                    popUntil(names);
+                    return;
+                }
+                if (SPECIAL.contains(tag) && !"address".equals(tag) && !"div".equals(tag) && !"p".equals(tag)) {
+                    return;
+                }
+            }
+        }
+
+        private void closeCell() {
+            popUntil(CELLS);
+            clearFormattingToMarker();
+        }
+
+        private void closeCaption() {
+            popUntil("caption");
+            clearFormattingToMarker();
+        }
+
+        /**
+         * Pops the elements till the closest one of the given name, inclusive
+         */
+        private void popUntil(String name) {
+            while (stack.size() > 1) {
+                String tag = current().tag;
+                pop();
+                if (tag.equals(name)) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Pops the elements till the closest one of the given names, inclusive
+         */
+        private void popUntil(Set<String> names) {
+            while (stack.size() > 1) {
+                String tag = current().tag;
+                pop();
+                if (names.contains(tag)) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Pops the elements till the closest one of the given names, exclusive
+         */
+        private void clearTo(Set<String> names) {
+            while (stack.size() > 1 && !names.contains(current().tag)) {
+                pop();
+            }
+        }
+
+        /**
+         * @return the active formatting element of the name after the last marker
+         */
+        private Frame activeFormatting(String name) {
+            for (int i = formatting.size() - 1; i >= 0 && formatting.get(i) != null; i--) {
+                if (formatting.get(i).tag.equals(name)) {
+                    return formatting.get(i);
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Reopens the active formatting elements which were closed implicitly, e.g. {@code <b>} by {@code </p>}
+         */
+        private void reconstructFormatting() {
+            int size = formatting.size();
+            if (size == 0 || formatting.get(size - 1) == null || stack.contains(formatting.get(size - 1))) {
+                return;
+            }
+            int first = size - 1;
+            int last = Math.max(size - MAX_FORMATTING_LOOKBACK, 0);
+            while (first > last && formatting.get(first - 1) != null && !stack.contains(formatting.get(first - 1))) {
+                first--;
+            }
+            for (int i = first; i < size; i++) {
+                Frame element = formatting.get(i);
+                formatting.set(i, insert(element.tag, element.attributeNames, element.attributeValues,
+                        element.attributeCount));
+            }
+        }
+
+        /**
+         * Adds an active formatting element, the earliest of too many equal ones after the last marker is dropped
+         */
+        private void pushFormatting(Frame element) {
+            int equalCount = 0;
+            int last = Math.max(formatting.size() - 1 - MAX_FORMATTING_LOOKBACK, 0);
+            for (int i = formatting.size() - 1; i >= last && formatting.get(i) != null; i--) {
+                if (formatting.get(i).isSame(element) && ++equalCount == MAX_EQUAL_FORMATTING) {
+                    formatting.remove(i);
+                    break;
+                }
+            }
+            formatting.add(element);
+        }
+
+        private void clearFormattingToMarker() {
+            while (!formatting.isEmpty() && formatting.remove(formatting.size() - 1) != null) {
+                // removes the entries till the marker, inclusive
+            }
+        }
+
+        private void createHtml() {
+            html = insert(symbolTable.intern("html"), NO_ATTRIBUTES, NO_ATTRIBUTES, 0);
+            mode = Mode.BEFORE_HEAD;
+        }
+
+        private void createHead() {
+            head = insert(symbolTable.intern("head"), NO_ATTRIBUTES, NO_ATTRIBUTES, 0);
+            mode = Mode.IN_HEAD;
+        }
+
+        private void closeHead() {
+            while (current() != head) {
+                pop();
+            }
+            stack.remove(stack.size() - 1);
+            headTextEnd = text.length();
+            headClosed = true;
+            mode = Mode.AFTER_HEAD;
+        }
+
+        private void createBody(String[] names, String[] values, int count) {
+            if (headClosed) {
+                html.children.add(build(head, headTextEnd));
+                headClosed = false;
+            }
+            appendHtmlText();
+            body = insert(symbolTable.intern("body"), names, values, count);
+            mode = Mode.IN_BODY;
+        }
+
+        private void closeBody() {
+            stack.remove(stack.size() - 1);
+            bodyTextEnd = text.length();
+            bodyClosed = true;
+        }
+
+        private void reopenBody() {
+            if (bodyClosed) {
+                stack.add(body);
+                bodyClosed = false;
+            }
+            mode = Mode.IN_BODY;
+        }
+
+        /**
+         * Closes the elements in the html after the body is closed
+         */
+        private void closeHtml() {
+            // once the html element is closed, Jsoup has nothing to close anymore
+            while (!htmlClosed && current() != html) {
+                if (current() == body) {
+                    closeBody();
+                } else {
+                    pop();
+                }
+            }
+            mode = Mode.AFTER_HTML;
+            htmlClosed = true;
+        }
+
+        private void appendHtmlText() {
+            for (String value : htmlText) {
+                insertText(value, false);
+            }
+            htmlText.clear();
+        }
+
+        private Frame current() {
+            return stack.get(stack.size() - 1);
+        }
+
+        private Frame insert(String name, String[] names, String[] values, int count) {
+            if (fosterParenting && TABLE_STRUCTURE.contains(current().tag) || stack.size() >= MAX_SCOPE_DEPTH) {
+                throw new FallbackException();
+            }
+            int index = stack.isEmpty() ? 0 : current().elementCount++;
+            Frame frame = new Frame(name, names, values, count, index, text);
+            stack.add(frame);
+            lastInserted = frame;
+            return frame;
+        }
+
+        private void insertVoid(String name, String[] names, String[] values, int count) {
+            insert(name, names, values, count);
+            pop();
+        }
+
+        private void insertText(String value, boolean cdata) {
+            text.append(cdata ? value : StringUtil.normaliseWhitespace(value));
+        }
+
+        private void pop() {
+            Frame frame = stack.remove(stack.size() - 1);
+            Node node = build(frame, text.length());
+            if (stack.isEmpty()) {
+                root = node;
+            } else {
+                current().children.add(node);
+            }
+        }
+
+        private Node build(Frame frame, int textEnd) {
+            int textStart = text.start(frame.textLength, frame.textCount);
+            Node node = previous == null ? null : previous.take(frame.tag, frame.index, frame.attributeNames,
+                    frame.attributeValues, frame.attributeCount, frame.children, text, textStart, textEnd);
+            if (node != null) {
+                return node;
+            }
+            return new NodeBuilder(symbolTable)
+                    .setTag(frame.tag)
+                    .setIndex(frame.index)
+                    .setAttributes(frame.attributeNames, frame.attributeValues, frame.attributeCount)
+                    .setChildren(frame.children)
+                    .setText(text, textStart, textEnd)
+                    .build();
+        }
+    }
+}
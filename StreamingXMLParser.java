@@ -0,0 +1,276 @@
+package com.epam.healenium.treecomparing;
+
+import org.jsoup.internal.StringUtil;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Xml parser of mobile page sources which builds {@link Node}s right out of the events of a {@link XMLStreamReader},
+ * keeping only the open elements in a stack. Unlike {@link JsoupXMLParser}, no DOM of the page is built, so the peak
+ * memory is about the size of the resulting tree.
+ * <p>
+ * The result is the same as of {@link JsoupXMLParser}: the shallowest hierarchy element is the root, the first one in
+ * document order of those at the same depth. Once the document element is the root, the rest of the document is
+ * skipped, otherwise it is read to the end in case a shallower hierarchy element follows. Tags and attribute names are
+ * kept as is, including namespace prefixes and declarations, the inner text is joined out of whitespace-normalized
+ * text nodes and raw CDATA sections. The document must be well-formed xml, which page sources are. As by the xml
+ * rules, line breaks and tabs written as is in attribute values are read as spaces, while Jsoup keeps them. DTDs and
+ * external entities are not processed.
+ */
+public class StreamingXMLParser implements DocumentParser {
+
+    private static final String ROOT = "hierarchy";
+    /**
+     * The property of the JDK reader to report CDATA sections apart from the text around them
+     */
+    private static final String REPORT_CDATA = "http://java.sun.com/xml/stream/properties/report-cdata-event";
+    /**
+     * Looking a factory up takes longer than reading a small page. Once configured, the factory only creates readers,
+     * which is thread safe in the JDK and the common implementations.
+     */
+    private static final XMLInputFactory FACTORY = createFactory();
+
+    private final SymbolTable symbolTable;
+
+    public StreamingXMLParser() {
+        this(SymbolTable.getDefault());
+    }
+
+    /**
+     * @param symbolTable the table to intern tags, class names and attribute names into
+     */
+    public StreamingXMLParser(SymbolTable symbolTable) {
+        this.symbolTable = symbolTable;
+    }
+
+    @Override
+    public Node parse(InputStream inputStream) {
+        return parse(inputStream, null);
+    }
+
+    /**
+     * @param previous the previous version of the page to take the nodes of unchanged subtrees from, or null
+     */
+    Node parse(InputStream inputStream, PreviousVersion previous) {
+        XMLStreamReader reader = null;
+        try {
+            reader = FACTORY.createXMLStreamReader(inputStream, StandardCharsets.UTF_8.name());
+            TreeBuilder treeBuilder = new TreeBuilder(previous);
+            while (reader.hasNext() && !treeBuilder.isFinished()) {
+                treeBuilder.process(reader, reader.next());
+            }
+            return treeBuilder.finish();
+        } catch (XMLStreamException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            close(reader);
+        }
+    }
+
+    private static XMLInputFactory createFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        if (factory.isPropertySupported(REPORT_CDATA)) {
+            factory.setProperty(REPORT_CDATA, true);
+        }
+        return factory;
+    }
+
+    /**
+     * @return the name with the prefix, as written in the document
+     */
+    private static String qualifiedName(String prefix, String localName) {
+        return prefix == null || prefix.isEmpty() ? localName : prefix + ':' + localName;
+    }
+
+    /**
+     * Most attributes of a page source are the boolean flags of views (checkable, clickable, enabled...) and empty
+     * texts, so their values are kept once instead of once per node
+     */
+    private static String canonicalValue(String value) {
+        switch (value) {
+            case "":
+                return "";
+            case "true":
+                return "true";
+            case "false":
+                return "false";
+            default:
+                return value;
+        }
+    }
+
+    private static void close(XMLStreamReader reader) {
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (XMLStreamException ignored) {
+                // the input stream is closed by the caller
+            }
+        }
+    }
+
+    /**
+     * An open element
+     */
+    private static final class Frame {
+
+        private final String tag;
+        private final int index;
+        private final String[] attributeNames;
+        private final String[] attributeValues;
+        private final int textLength;
+        private final int textCount;
+        private final List<Node> children = new ArrayList<>();
+        private int elementCount;
+
+        Frame(XMLStreamReader reader, int index, DocumentText text) {
+            this.tag = qualifiedName(reader.getPrefix(), reader.getLocalName());
+            this.index = index;
+            int attributeCount = reader.getAttributeCount();
+            this.attributeNames = new String[attributeCount];
+            this.attributeValues = new String[attributeCount];
+            for (int i = 0; i < attributeCount; i++) {
+                attributeNames[i] = qualifiedName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i));
+                attributeValues[i] = canonicalValue(reader.getAttributeValue(i));
+            }
+            this.textLength = text.length();
+            this.textCount = text.count();
+        }
+    }
+
+    /**
+     * Builds the tree of the hierarchy element out of the events
+     */
+    private final class TreeBuilder {
+
+        private final PreviousVersion previous;
+        /**
+         * The text of the root being built, a new one for each hierarchy element shallower than the previous root
+         */
+        private DocumentText text = new DocumentText();
+        private final List<Frame> stack = new ArrayList<>();
+        /**
+         * The characters of the current text node, which a reader may report in several events
+         */
+        private final StringBuilder characters = new StringBuilder();
+        private Node root;
+        /**
+         * The depth of the current element, the document element has depth 1
+         */
+        private int depth;
+        /**
+         * The depth of the root being built or built
+         */
+        private int rootDepth = Integer.MAX_VALUE;
+
+        TreeBuilder(PreviousVersion previous) {
+            this.previous = previous;
+        }
+
+        /**
+         * @return true once the document element is built as the root, as no hierarchy element can be shallower
+         */
+        boolean isFinished() {
+            return root != null && rootDepth == 1;
+        }
+
+        void process(XMLStreamReader reader, int event) {
+            switch (event) {
+                case XMLStreamConstants.START_ELEMENT:
+                    flushCharacters();
+                    depth++;
+                    if (!stack.isEmpty()) {
+                        stack.add(new Frame(reader, current().elementCount++, text));
+                    } else if (depth < rootDepth
+                            && ROOT.equals(qualifiedName(reader.getPrefix(), reader.getLocalName()))) {
+                        rootDepth = depth;
+                        text = new DocumentText();
+                        stack.add(new Frame(reader, 0, text));
+                    }
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    flushCharacters();
+                    if (!stack.isEmpty()) {
+                        pop();
+                    }
+                    depth--;
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.SPACE:
+                    if (!stack.isEmpty()) {
+                        characters.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                    }
+                    break;
+                case XMLStreamConstants.CDATA:
+                    flushCharacters();
+                    if (!stack.isEmpty()) {
+                        appendText(reader.getText());
+                    }
+                    break;
+                default:
+                    // comments and processing instructions end a text node
+                    flushCharacters();
+                    break;
+            }
+        }
+
+        Node finish() {
+            if (root == null) {
+                throw new IllegalStateException("No " + ROOT + " element in the document");
+            }
+            text.trimToSize();
+            return root;
+        }
+
+        private Frame current() {
+            return stack.get(stack.size() - 1);
+        }
+
+        private void flushCharacters() {
+            if (characters.length() > 0) {
+                appendText(StringUtil.normaliseWhitespace(characters.toString()));
+                characters.setLength(0);
+            }
+        }
+
+        private void appendText(String value) {
+            if (!" ".equals(value)) {
+                text.append(value);
+            }
+        }
+
+        private void pop() {
+            Frame frame = stack.remove(stack.size() - 1);
+            int textStart = text.start(frame.textLength, frame.textCount);
+            // a root below the document element may be replaced by a shallower one, so it takes no previous nodes
+            Node node = previous == null || rootDepth != 1 ? null : previous.take(frame.tag, frame.index,
+                    frame.attributeNames, frame.attributeValues, frame.attributeNames.length, frame.children, text,
+                    textStart, text.length());
+            if (node == null) {
+                node = new NodeBuilder(symbolTable)
+                        .setTag(frame.tag)
+                        .setIndex(frame.index)
+                        .setAttributes(frame.attributeNames, frame.attributeValues, frame.attributeNames.length)
+                        .setChildren(frame.children)
+                        .setText(text, textStart, text.length())
+                        .build();
+            }
+            if (stack.isEmpty()) {
+                root = node;
+            } else {
+                current().children.add(node);
+            }
+        }
+    }
+}
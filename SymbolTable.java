@@ -0,0 +1,56 @@
+package com.epam.healenium.treecomparing;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Canonical instances of the strings which repeat across nodes and documents: tags, class names and attribute names.
+ * Equal interned strings are the same instance, so they are kept in memory once and compared by reference first.
+ * The table is bounded, strings beyond its capacity are returned as is. Thread safe.
+ */
+public final class SymbolTable {
+
+    private static final SymbolTable DEFAULT = new SymbolTable(1 << 16);
+
+    private final ConcurrentHashMap<String, String> symbols = new ConcurrentHashMap<>();
+    private final int capacity;
+
+    /**
+     * @param capacity the max number of strings to keep
+     */
+    public SymbolTable(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return the table shared by parsers and {@link NodeBuilder}s by default
+     */
+    public static SymbolTable getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * @param value a string to intern, may be null
+     * @return the canonical instance equal to value, or value itself if the table is full
+     */
+    public String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+        String symbol = symbols.get(value);
+        if (symbol != null) {
+            return symbol;
+        }
+        if (symbols.size() >= capacity) {
+            return value;
+        }
+        symbol = symbols.putIfAbsent(value, value);
+        return symbol == null ? value : symbol;
+    }
+
+    /**
+     * @return the number of interned strings
+     */
+    public int size() {
+        return symbols.size();
+    }
+}
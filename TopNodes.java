@@ -0,0 +1,149 @@
+package com.epam.healenium.treecomparing;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Keeps the given number of best scored nodes in a min-heap of primitive scores, without storing the rest.
+ * Nodes of equal score are ordered by their position in the document, regardless of the order they were offered in.
+ */
+final class TopNodes {
+
+    private final double[] scores;
+    private final int[] positions;
+    private final Node[] nodes;
+    private int size;
+    private int scoredCount;
+
+    /**
+     * @param capacity the max number of nodes to keep
+     */
+    TopNodes(int capacity) {
+        this.scores = new double[capacity];
+        this.positions = new int[capacity];
+        this.nodes = new Node[capacity];
+    }
+
+    /**
+     * @param maxScore the max score the next offered nodes can have
+     * @return false if none of such nodes will be kept
+     */
+    boolean canAccept(double maxScore) {
+        return size < scores.length || size > 0 && Double.compare(maxScore, scores[0]) >= 0;
+    }
+
+    /**
+     * @return the score the offered nodes must exceed to be kept, negative infinity until the heap is full
+     */
+    double getScoreToBeat() {
+        if (size < scores.length) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        return size > 0 ? scores[0] : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * @param score    the score of the node
+     * @param position the position of the node in the document
+     * @param node     the scored node
+     */
+    void offer(double score, int position, Node node) {
+        if (size < scores.length) {
+            set(size, score, position, node);
+            siftUp(size++);
+        } else if (size > 0 && isWorse(0, score, position)) {
+            set(0, score, position, node);
+            siftDown(0);
+        }
+    }
+
+    /**
+     * @param count the number of nodes scored to find the kept ones, which were offered or not
+     */
+    void addScoredCount(int count) {
+        scoredCount += count;
+    }
+
+    int getScoredCount() {
+        return scoredCount;
+    }
+
+    /**
+     * @param other nodes to add to this ones
+     */
+    void addAll(TopNodes other) {
+        for (int i = 0; i < other.size; i++) {
+            offer(other.scores[i], other.positions[i], other.nodes[i]);
+        }
+    }
+
+    /**
+     * @return kept nodes ordered by likeness descending
+     */
+    List<Scored<Node>> toList() {
+        TopNodes heap = new TopNodes(size);
+        heap.addAll(this);
+        List<Scored<Node>> result = new ArrayList<>(size);
+        while (heap.size > 0) {
+            result.add(new Scored<>(heap.scores[0], heap.nodes[0]));
+            int last = --heap.size;
+            heap.set(0, heap.scores[last], heap.positions[last], heap.nodes[last]);
+            heap.siftDown(0);
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (isWorse(parent, scores[i], positions[i])) {
+                return;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int worst = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if (left < size && isWorse(left, scores[worst], positions[worst])) {
+                worst = left;
+            }
+            if (right < size && isWorse(right, scores[worst], positions[worst])) {
+                worst = right;
+            }
+            if (worst == i) {
+                return;
+            }
+            swap(i, worst);
+            i = worst;
+        }
+    }
+
+    /**
+     * @return true if the entry at i is less likely than the given one
+     */
+    private boolean isWorse(int i, double score, int position) {
+        int compare = Double.compare(scores[i], score);
+        return compare < 0 || compare == 0 && positions[i] > position;
+    }
+
+    private void set(int i, double score, int position, Node node) {
+        scores[i] = score;
+        positions[i] = position;
+        nodes[i] = node;
+    }
+
+    private void swap(int i, int j) {
+        double score = scores[i];
+        int position = positions[i];
+        Node node = nodes[i];
+        set(i, scores[j], positions[j], nodes[j]);
+        set(j, score, position, node);
+    }
+}
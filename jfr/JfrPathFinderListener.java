@@ -0,0 +1,226 @@
+package com.epam.healenium.treecomparing.jfr;
+
+import com.epam.healenium.treecomparing.PathFinderListener;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Listener which emits a JDK Flight Recorder event for each phase of a search, so slow searches can be correlated
+ * with GC and CPU load in a recording. The events are in the "Healenium" category and are enabled by the default
+ * recording settings, e.g. {@code -XX:StartFlightRecording}.
+ * <p>
+ * An event begins once its phase starts, see {@link PathFinderListener#started(Phase)}, and is committed once the
+ * phase ends, so it spans the phase in a recording. The duration of the phase as measured by the path finder is also
+ * its "Phase Duration" field. A phase reported without its start, e.g. by a caller of the listener methods, gets an
+ * event of no duration. Requires Java 11 or later, unlike the rest of the library. Thread safe.
+ */
+public class JfrPathFinderListener implements PathFinderListener {
+
+    /**
+     * The begun events of the phases of each thread, by the ordinals of the phases
+     */
+    private final ThreadLocal<PhaseEvent[]> startedEvents =
+            ThreadLocal.withInitial(() -> new PhaseEvent[Phase.values().length]);
+
+    @Override
+    public void started(Phase phase) {
+        PhaseEvent event = create(phase);
+        if (event.isEnabled()) {
+            event.begin();
+            startedEvents.get()[phase.ordinal()] = event;
+        }
+    }
+
+    @Override
+    public void parsed(long nanos, int nodeCount) {
+        ParseEvent event = (ParseEvent) end(Phase.PARSED);
+        if (event.shouldCommit()) {
+            event.phaseDuration = nanos;
+            event.nodeCount = nodeCount;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void prepared(long nanos, int nodeCount, int leafCount) {
+        PrepareEvent event = (PrepareEvent) end(Phase.PREPARED);
+        if (event.shouldCommit()) {
+            event.phaseDuration = nanos;
+            event.nodeCount = nodeCount;
+            event.leafCount = leafCount;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void exactMatched(long nanos, int queryCount, int matchCount) {
+        ExactMatchEvent event = (ExactMatchEvent) end(Phase.EXACT_MATCHED);
+        if (event.shouldCommit()) {
+            event.phaseDuration = nanos;
+            event.queryCount = queryCount;
+            event.matchCount = matchCount;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void leavesScanned(long nanos, int queryCount, int leafCount) {
+        LeafScanEvent event = (LeafScanEvent) end(Phase.LEAVES_SCANNED);
+        if (event.shouldCommit()) {
+            event.phaseDuration = nanos;
+            event.queryCount = queryCount;
+            event.leafCount = leafCount;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void scored(long nanos, int nodeCount, int candidateCount, int scoredCount, int resultCount) {
+        ScoreEvent event = (ScoreEvent) end(Phase.SCORED);
+        if (event.shouldCommit()) {
+            event.phaseDuration = nanos;
+            event.nodeCount = nodeCount;
+            event.candidateCount = candidateCount;
+            event.scoredCount = scoredCount;
+            event.prunedCount = candidateCount - scoredCount;
+            event.resultCount = resultCount;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void sorted(long nanos, int scoreCount, int resultCount) {
+        SortEvent event = (SortEvent) end(Phase.SORTED);
+        if (event.shouldCommit()) {
+            event.phaseDuration = nanos;
+            event.scoreCount = scoreCount;
+            event.resultCount = resultCount;
+            event.commit();
+        }
+    }
+
+    /**
+     * @return the begun event of the phase ended now, or a new one if the start of the phase was not reported
+     */
+    private PhaseEvent end(Phase phase) {
+        PhaseEvent[] events = startedEvents.get();
+        PhaseEvent event = events[phase.ordinal()];
+        if (event == null) {
+            return create(phase);
+        }
+        events[phase.ordinal()] = null;
+        event.end();
+        return event;
+    }
+
+    private static PhaseEvent create(Phase phase) {
+        switch (phase) {
+            case PARSED:
+                return new ParseEvent();
+            case PREPARED:
+                return new PrepareEvent();
+            case EXACT_MATCHED:
+                return new ExactMatchEvent();
+            case LEAVES_SCANNED:
+                return new LeafScanEvent();
+            case SCORED:
+                return new ScoreEvent();
+            case SORTED:
+                return new SortEvent();
+            default:
+                throw new IllegalArgumentException("Unknown phase " + phase);
+        }
+    }
+
+    @Category("Healenium")
+    @StackTrace(false)
+    abstract static class PhaseEvent extends Event {
+
+        @Label("Phase Duration")
+        @Timespan(Timespan.NANOSECONDS)
+        long phaseDuration;
+    }
+
+    @Name("healenium.Parse")
+    @Label("Parse")
+    @Description("A page is parsed into a tree of nodes")
+    static class ParseEvent extends PhaseEvent {
+
+        @Label("Nodes")
+        int nodeCount;
+    }
+
+    @Name("healenium.Prepare")
+    @Label("Prepare")
+    @Description("A tree of nodes is flattened for the search")
+    static class PrepareEvent extends PhaseEvent {
+
+        @Label("Nodes")
+        int nodeCount;
+
+        @Label("Leaves")
+        int leafCount;
+    }
+
+    @Name("healenium.ExactMatch")
+    @Label("Exact Match")
+    @Description("The exact matches of the searched nodes are looked for")
+    static class ExactMatchEvent extends PhaseEvent {
+
+        @Label("Searched Paths")
+        int queryCount;
+
+        @Label("Exact Matches")
+        int matchCount;
+    }
+
+    @Name("healenium.LeafScan")
+    @Label("Leaf Scan")
+    @Description("The leaf paths are compared with the searched paths")
+    static class LeafScanEvent extends PhaseEvent {
+
+        @Label("Searched Paths")
+        int queryCount;
+
+        @Label("Leaves")
+        int leafCount;
+    }
+
+    @Name("healenium.Score")
+    @Label("Score")
+    @Description("The nodes are scored for a searched path")
+    static class ScoreEvent extends PhaseEvent {
+
+        @Label("Nodes")
+        int nodeCount;
+
+        @Label("Candidates")
+        int candidateCount;
+
+        @Label("Node Distance Invocations")
+        int scoredCount;
+
+        @Label("Pruned Candidates")
+        int prunedCount;
+
+        @Label("Results")
+        int resultCount;
+    }
+
+    @Name("healenium.Sort")
+    @Label("Sort")
+    @Description("The scored nodes are sorted and cut")
+    static class SortEvent extends PhaseEvent {
+
+        @Label("Distinct Scores")
+        int scoreCount;
+
+        @Label("Results")
+        int resultCount;
+    }
+}
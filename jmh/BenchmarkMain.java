@@ -0,0 +1,31 @@
+package com.epam.healenium.treecomparing.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler, which reports the allocation rate and the bytes allocated per operation
+ * ({@code gc.alloc.rate.norm}). The arguments are the usual JMH command line, e.g.
+ * {@code PathFinderBenchmark -p depth=8 -rf json -rff result.json} to run a single benchmark with a deeper page and
+ * keep the results for comparison with another release.
+ * <p>
+ * The benchmarks are compiled with the JMH annotation processor (jmh-core and jmh-generator-annprocess) on the class
+ * path together with the library.
+ */
+public final class BenchmarkMain {
+
+    private BenchmarkMain() {
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build())
+                .run();
+    }
+}
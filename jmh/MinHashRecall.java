@@ -0,0 +1,194 @@
+package com.epam.healenium.treecomparing.benchmark;
+
+import com.epam.healenium.treecomparing.HeuristicNodeDistance;
+import com.epam.healenium.treecomparing.JsoupHTMLParser;
+import com.epam.healenium.treecomparing.LCSPathDistance;
+import com.epam.healenium.treecomparing.Node;
+import com.epam.healenium.treecomparing.Path;
+import com.epam.healenium.treecomparing.PathFinder;
+import com.epam.healenium.treecomparing.PathQuery;
+import com.epam.healenium.treecomparing.PreparedDocument;
+import com.epam.healenium.treecomparing.Scored;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Measures the recall of {@link PathFinder#withMinHash(int, int)} against the exhaustive search, so the choice of
+ * bands and rows can be repeated on any machine. The pages are generated feeds of rows of four text cells: in the new
+ * version of a page each cell text has a word replaced with the probability of {@value #EDIT_RATE} and each row is
+ * replaced with a new one with the probability of {@value #REPLACE_RATE}. The searched nodes are evenly spaced leaves
+ * of the old version. The pages depend only on the seeds, so the recall is the same on each run, only the times vary.
+ * <p>
+ * Top-1 recall is the share of the searches whose best score equals the best score of the exhaustive search, top-5
+ * recall is the share of the exhaustive 5 best nodes found among the 5 best. The arguments are the number of pages,
+ * 20 by default, the number of rows of a page, 150 by default, and the bands x rows to measure, e.g.
+ * {@code 20 150 32x2 16x4}.
+ */
+public final class MinHashRecall {
+
+    private static final double EDIT_RATE = 1.0 / 3;
+    private static final double REPLACE_RATE = 0.05;
+    private static final int QUERIES_PER_PAGE = 200;
+    private static final int BEST_GUESSES = 5;
+    private static final String[] DEFAULT_PARAMETERS = {"32x2", "16x2", "16x4", "8x4", "4x8"};
+    private static final String[] WORDS = {"order", "invoice", "customer", "delivered", "pending", "total", "price",
+            "quantity", "product", "review", "rating", "comment", "account", "balance", "payment", "status",
+            "address", "message", "subject", "search", "submit", "cancel", "login", "settings", "shipping", "refund",
+            "discount", "warehouse", "tracking", "receipt", "profile", "support"};
+    private static final String[] NAMES = {"alice", "bob", "carol", "dave", "erin", "frank", "grace", "heidi",
+            "ivan", "judy", "mallory", "oscar", "peggy", "trent", "victor", "walter"};
+
+    private MinHashRecall() {
+    }
+
+    public static void main(String[] args) {
+        int pageCount = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int rowCount = args.length > 1 ? Integer.parseInt(args[1]) : 150;
+        String[] parameters = args.length > 2 ? Arrays.copyOfRange(args, 2, args.length) : DEFAULT_PARAMETERS;
+
+        List<List<PathQuery>> queries = new ArrayList<>();
+        List<PreparedDocument> documents = new ArrayList<>();
+        for (int seed = 0; seed < pageCount; seed++) {
+            String[] versions = feed(seed, rowCount);
+            queries.add(queries(parse(versions[0])));
+            documents.add(new PreparedDocument(parse(versions[1])));
+        }
+        int queryCount = queries.stream().mapToInt(List::size).sum();
+
+        PathFinder exhaustive = new PathFinder(new LCSPathDistance(), new HeuristicNodeDistance());
+        long start = System.nanoTime();
+        List<List<List<Scored<Node>>>> expected = new ArrayList<>();
+        for (int page = 0; page < pageCount; page++) {
+            expected.add(exhaustive.find(queries.get(page), documents.get(page), BEST_GUESSES));
+        }
+        System.out.printf(Locale.ROOT, "%d pages of %d rows, %d queries, exhaustive search %.1f s%n", pageCount,
+                rowCount, queryCount, seconds(start));
+        System.out.println("bands x rows  top-1 recall  top-5 recall  time");
+
+        for (String parameter : parameters) {
+            String[] bandsAndRows = parameter.split("x");
+            int bands = Integer.parseInt(bandsAndRows[0]);
+            int rows = Integer.parseInt(bandsAndRows[1]);
+            PathFinder approximate = exhaustive.withMinHash(bands, rows);
+            int sameBest = 0;
+            int found = 0;
+            int best = 0;
+            start = System.nanoTime();
+            for (int page = 0; page < pageCount; page++) {
+                List<List<Scored<Node>>> actual = approximate.find(queries.get(page), documents.get(page),
+                        BEST_GUESSES);
+                for (int i = 0; i < actual.size(); i++) {
+                    List<Scored<Node>> expectedNodes = expected.get(page).get(i);
+                    List<Scored<Node>> actualNodes = actual.get(i);
+                    if (expectedNodes.isEmpty() || !actualNodes.isEmpty()
+                            && actualNodes.get(0).getScore() == expectedNodes.get(0).getScore()) {
+                        sameBest++;
+                    }
+                    Set<Node> actualSet = Collections.newSetFromMap(new IdentityHashMap<>());
+                    actualNodes.forEach(scored -> actualSet.add(scored.getValue()));
+                    for (Scored<Node> scored : expectedNodes) {
+                        if (actualSet.contains(scored.getValue())) {
+                            found++;
+                        }
+                    }
+                    best += expectedNodes.size();
+                }
+            }
+            System.out.printf(Locale.ROOT, "%5d x %-5d  %12.3f  %12.3f  %.1f s%n", bands, rows,
+                    (double) sameBest / queryCount, best == 0 ? 1 : (double) found / best, seconds(start));
+        }
+    }
+
+    /**
+     * @return the old and the new version of a feed page of the seed
+     */
+    static String[] feed(long seed, int rowCount) {
+        Random random = new Random(seed);
+        Random changes = new Random(~seed);
+        StringBuilder oldPage = new StringBuilder("<html><head><title>feed</title></head><body><div class=\"feed\">");
+        StringBuilder newPage = new StringBuilder(oldPage);
+        for (int i = 0; i < rowCount; i++) {
+            String[] cells = row(random);
+            row(oldPage, i, cells);
+            if (changes.nextDouble() < REPLACE_RATE) {
+                row(newPage, rowCount + i, row(changes));
+                continue;
+            }
+            for (int j = 0; j < cells.length; j++) {
+                if (changes.nextDouble() < EDIT_RATE) {
+                    cells[j] = edit(cells[j], changes);
+                }
+            }
+            row(newPage, i, cells);
+        }
+        return new String[]{oldPage.append("</div></body></html>").toString(),
+                newPage.append("</div></body></html>").toString()};
+    }
+
+    /**
+     * @return the texts of the title, the author, the body and the footer of a row
+     */
+    private static String[] row(Random random) {
+        return new String[]{
+                words(random, 3 + random.nextInt(4)),
+                NAMES[random.nextInt(NAMES.length)] + ' ' + NAMES[random.nextInt(NAMES.length)],
+                words(random, 10 + random.nextInt(11)),
+                (1 + random.nextInt(99)) + " comments " + words(random, 2)};
+    }
+
+    private static void row(StringBuilder page, int id, String[] cells) {
+        page.append("<div class=\"row\" id=\"row").append(id).append("\">")
+                .append("<h3 class=\"title\">").append(cells[0]).append("</h3>")
+                .append("<span class=\"author\">").append(cells[1]).append("</span>")
+                .append("<p class=\"body\">").append(cells[2]).append("</p>")
+                .append("<span class=\"meta\">").append(cells[3]).append("</span>")
+                .append("</div>");
+    }
+
+    private static String words(Random random, int count) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            text.append(i == 0 ? "" : " ").append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return text.toString();
+    }
+
+    /**
+     * @return the text with a random word replaced
+     */
+    private static String edit(String text, Random random) {
+        String[] words = text.split(" ");
+        words[random.nextInt(words.length)] = WORDS[random.nextInt(WORDS.length)];
+        return String.join(" ", words);
+    }
+
+    private static Node parse(String page) {
+        return new JsoupHTMLParser().parse(new ByteArrayInputStream(page.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * @return the queries of evenly spaced leaves of the page
+     */
+    private static List<PathQuery> queries(Node root) {
+        List<Path> leafPaths = Pages.leafPaths(root);
+        int step = Math.max(1, leafPaths.size() / QUERIES_PER_PAGE);
+        List<PathQuery> queries = new ArrayList<>();
+        for (int i = 0; i < leafPaths.size(); i += step) {
+            queries.add(new PathQuery(leafPaths.get(i)));
+        }
+        return queries;
+    }
+
+    private static double seconds(long start) {
+        return (System.nanoTime() - start) / 1e9;
+    }
+}
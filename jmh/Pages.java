@@ -0,0 +1,105 @@
+package com.epam.healenium.treecomparing.benchmark;
+
+import com.epam.healenium.treecomparing.JsoupHTMLParser;
+import com.epam.healenium.treecomparing.Node;
+import com.epam.healenium.treecomparing.Path;
+import com.epam.healenium.treecomparing.PreparedDocument;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * The old and the new version of a synthetic page shared by benchmarks, with the searched path taken from the old
+ * version. The shape of the page is set by the parameters, e.g. {@code -p depth=8 -p fanOut=3}.
+ */
+@State(Scope.Benchmark)
+public class Pages {
+
+    @Param("42")
+    public long seed;
+
+    @Param({"5", "7"})
+    public int depth;
+
+    @Param("4")
+    public int fanOut;
+
+    @Param("20")
+    public int classCardinality;
+
+    @Param("10")
+    public int attributeCardinality;
+
+    @Param("30")
+    public int textLength;
+
+    @Param("0.1")
+    public double mutationRate;
+
+    byte[] oldHtml;
+    byte[] newHtml;
+    byte[] oldXml;
+    byte[] newXml;
+    Node oldRoot;
+    Node newRoot;
+    /**
+     * The path to the leaf in the middle of the old version
+     */
+    Path path;
+    /**
+     * The paths to all the leaves of the new version
+     */
+    List<Path> leafPaths;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SyntheticDom dom = new SyntheticDom(seed, depth, fanOut, classCardinality, attributeCardinality, textLength,
+                mutationRate);
+        oldHtml = dom.oldHtml();
+        newHtml = dom.newHtml();
+        oldXml = dom.oldXml();
+        newXml = dom.newXml();
+        oldRoot = new JsoupHTMLParser().parse(new ByteArrayInputStream(oldHtml));
+        newRoot = new JsoupHTMLParser().parse(new ByteArrayInputStream(newHtml));
+        List<Path> oldLeafPaths = leafPaths(oldRoot);
+        path = oldLeafPaths.get(oldLeafPaths.size() / 2);
+        leafPaths = leafPaths(newRoot);
+    }
+
+    /**
+     * @return the leaves of the tree in document order
+     */
+    static List<Node> leaves(Node root) {
+        PreparedDocument document = new PreparedDocument(root);
+        List<Node> leaves = new ArrayList<>();
+        for (int i = 0; i < document.size(); i++) {
+            if (document.isLeaf(i)) {
+                leaves.add(document.getNode(i));
+            }
+        }
+        return leaves;
+    }
+
+    /**
+     * @return the paths from the root to the leaves of the tree in document order
+     */
+    static List<Path> leafPaths(Node root) {
+        List<Path> paths = new ArrayList<>();
+        for (Node leaf : leaves(root)) {
+            Deque<Node> nodes = new ArrayDeque<>();
+            for (Node node = leaf; node != null; node = node.getParent()) {
+                nodes.push(node);
+            }
+            paths.add(new Path(nodes.toArray(new Node[0])));
+        }
+        return paths;
+    }
+}
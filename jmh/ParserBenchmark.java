@@ -0,0 +1,48 @@
+package com.epam.healenium.treecomparing.benchmark;
+
+import com.epam.healenium.treecomparing.JsoupHTMLParser;
+import com.epam.healenium.treecomparing.JsoupXMLParser;
+import com.epam.healenium.treecomparing.Node;
+import com.epam.healenium.treecomparing.StreamingHTMLParser;
+import com.epam.healenium.treecomparing.StreamingXMLParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of the new version of a synthetic page into {@link Node}s
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+
+    @Benchmark
+    public Node parseHtml(Pages pages) {
+        return new JsoupHTMLParser().parse(new ByteArrayInputStream(pages.newHtml));
+    }
+
+    @Benchmark
+    public Node parseHtmlStreaming(Pages pages) {
+        return new StreamingHTMLParser().parse(new ByteArrayInputStream(pages.newHtml));
+    }
+
+    @Benchmark
+    public Node parseXml(Pages pages) {
+        return new JsoupXMLParser().parse(new ByteArrayInputStream(pages.newXml));
+    }
+
+    @Benchmark
+    public Node parseXmlStreaming(Pages pages) {
+        return new StreamingXMLParser().parse(new ByteArrayInputStream(pages.newXml));
+    }
+}
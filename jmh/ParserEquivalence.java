@@ -0,0 +1,132 @@
+package com.epam.healenium.treecomparing.benchmark;
+
+import com.epam.healenium.treecomparing.DocumentParser;
+import com.epam.healenium.treecomparing.JsoupHTMLParser;
+import com.epam.healenium.treecomparing.Node;
+import com.epam.healenium.treecomparing.StreamingHTMLParser;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks that {@link StreamingHTMLParser} builds the same tree as {@link JsoupHTMLParser}: tags, indexes, attributes
+ * and inner texts of all the nodes. The pages are hand-written ones with implied, misnested and misplaced markup, and
+ * the old and the new versions of synthetic pages of as many seeds as the argument, 100 by default. The differing
+ * pages are printed, and the exit status is 1 if there are any.
+ */
+public final class ParserEquivalence {
+
+    private static final String[] PAGES = {
+            "<select><optgroup label=\"A\"><option>One</optgroup><option>Two</select>",
+            "<select><option>One<optgroup label=\"A\"><option>Two<option>Three</optgroup></select>",
+            "<p>One<p>Two<div>Three</div>Four",
+            "<ul><li>One<li>Two<ul><li>Three</ul></ul><dl><dt>Term<dd>Definition<dt>Other</dl>",
+            "<table><tr><td>One<td>Two<tr><th>Three</table>After",
+            "<table><caption>Caption<tr><td>Cell</table>",
+            "<table><colgroup><col></col> <tr><td>Cell</tbody> Text</table>",
+            "<table><td><select><option>One</table>After",
+            "<table>Text<tr>Row text<td>Cell</table>",
+            "<b>Bold<table><td></b>Cell</td>Text</table>",
+            "<b><i>One</b>Two</i>Three",
+            "<b><div>One</b>Two</div>",
+            "<table><div>Misplaced</div><tr><td>Cell</table>",
+            "<a href=\"1\">One<a href=\"2\">Two</a>",
+            "<b>1<b>2<b>3<b>4<p>Reopened</p>",
+            "<head><title>Title</title><noscript><link rel=\"a\"><img src=\"b\"></noscript></head><body>Text",
+            "<form><input name=\"a\"></form><form><input name=\"b\"><form>Nested</form>",
+            "<div><form><p>Text</div></form>After",
+            "<pre>\nOne</pre><textarea>\nTwo &amp; three</textarea><listing/>\nFour",
+            "<script>if (a < b) {}</script><style>p {}</style><p>Text<script/>After",
+            "<ruby>Base<rt>Annotation<rp>(</rp></ruby><rt>Dropped",
+            "<svg><image href=\"a\"></svg><image src=\"b\">",
+            "<html ID=\"y\"><body Class=\"c\">Text<body id=\"b\" ID=\"c\">",
+            "Text</body> Space</html> More<p>After",
+            "<my-widget><b>Bold</my-widget><custom-tag>Not reopened</custom-tag>",
+            "<plaintext/><b>Plain & text",
+            "<p>One<textarea>Two<div>Three",
+            "<div>One<title>Two<b>Three",
+            "<title>One<b>Two</TiTlE>Three",
+            "<textarea>One<b>Two</textareax>Three",
+            "<isindex><form action=\"a\"><isindex prompt=\"Search\" name=\"q\" id=\"i\">",
+            "<template><p>Template</template>",
+            "<div><!-- comment -->One<![CDATA[ two ]]>&nbsp;three&lt;</div>",
+            nested("div", 150)
+    };
+
+    private ParserEquivalence() {
+    }
+
+    public static void main(String[] args) {
+        int seeds = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        List<String> differences = new ArrayList<>();
+        int count = 0;
+        for (String page : PAGES) {
+            compare(page, page.getBytes(StandardCharsets.UTF_8), differences);
+            count++;
+        }
+        for (int seed = 0; seed < seeds; seed++) {
+            SyntheticDom dom = new SyntheticDom(seed, 5, 4, 20, 10, 30, 0.1);
+            compare("old page of seed " + seed, dom.oldHtml(), differences);
+            compare("new page of seed " + seed, dom.newHtml(), differences);
+            count += 2;
+        }
+        differences.forEach(System.out::println);
+        System.out.println(differences.size() + " of " + count + " pages differ");
+        if (!differences.isEmpty()) {
+            System.exit(1);
+        }
+    }
+
+    private static void compare(String name, byte[] page, List<String> differences) {
+        String difference = difference(parse(new JsoupHTMLParser(), page), parse(new StreamingHTMLParser(), page),
+                "html");
+        if (difference != null) {
+            differences.add(name + ": " + difference);
+        }
+    }
+
+    private static Node parse(DocumentParser parser, byte[] page) {
+        return parser.parse(new ByteArrayInputStream(page));
+    }
+
+    /**
+     * @return the description of the first difference, or null if the trees are the same
+     */
+    private static String difference(Node expected, Node actual, String path) {
+        if (!expected.getTag().equals(actual.getTag())) {
+            return path + " is " + actual.getTag() + " instead of " + expected.getTag();
+        }
+        if (!expected.getIndex().equals(actual.getIndex())
+                || !String.valueOf(expected.getId()).equals(String.valueOf(actual.getId()))
+                || !expected.getClasses().equals(actual.getClasses())
+                || !expected.getOtherAttributes().equals(actual.getOtherAttributes())) {
+            return path + " is " + actual + " instead of " + expected;
+        }
+        if (!expected.getInnerText().equals(actual.getInnerText())) {
+            return path + " has text \"" + actual.getInnerText() + "\" instead of \"" + expected.getInnerText() + '"';
+        }
+        List<Node> expectedChildren = expected.getChildren();
+        List<Node> actualChildren = actual.getChildren();
+        if (expectedChildren.size() != actualChildren.size()) {
+            return path + " has " + actualChildren.size() + " children instead of " + expectedChildren.size();
+        }
+        for (int i = 0; i < expectedChildren.size(); i++) {
+            Node child = expectedChildren.get(i);
+            String difference = difference(child, actualChildren.get(i), path + '/' + child.getTag() + '[' + i + ']');
+            if (difference != null) {
+                return difference;
+            }
+        }
+        return null;
+    }
+
+    private static String nested(String tag, int depth) {
+        StringBuilder page = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            page.append('<').append(tag).append('>');
+        }
+        return page.append("Deep").toString();
+    }
+}
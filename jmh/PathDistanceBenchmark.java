@@ -0,0 +1,98 @@
+package com.epam.healenium.treecomparing.benchmark;
+
+import com.epam.healenium.treecomparing.BitParallelLCSPathDistance;
+import com.epam.healenium.treecomparing.IncrementalPathDistance;
+import com.epam.healenium.treecomparing.JsoupHTMLParser;
+import com.epam.healenium.treecomparing.LCSPathDistance;
+import com.epam.healenium.treecomparing.Node;
+import com.epam.healenium.treecomparing.Path;
+import com.epam.healenium.treecomparing.PreparedDocument;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The path distances on deep pages: a chain of elements of the given depth with random siblings of the chain
+ * elements in the new version. The searched path is the deepest leaf path of the old version.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PathDistanceBenchmark {
+
+    @Param({"LCSPathDistance", "BitParallelLCSPathDistance"})
+    public String implementation;
+
+    @Param({"8", "24", "48", "120"})
+    public int depth;
+
+    private IncrementalPathDistance pathDistance;
+    private Path path;
+    private Path otherPath;
+    private PreparedDocument document;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        pathDistance = implementation.equals("LCSPathDistance")
+                ? new LCSPathDistance()
+                : new BitParallelLCSPathDistance();
+        SyntheticDom dom = new SyntheticDom(42, depth, 1, 20, 10, 10, 0.3);
+        path = deepest(Pages.leafPaths(new JsoupHTMLParser().parse(new ByteArrayInputStream(dom.oldHtml()))));
+        Node newRoot = new JsoupHTMLParser().parse(new ByteArrayInputStream(dom.newHtml()));
+        otherPath = deepest(Pages.leafPaths(newRoot));
+        document = new PreparedDocument(newRoot);
+    }
+
+    /**
+     * The distance of two paths of about the depth
+     */
+    @Benchmark
+    public int distance() {
+        return pathDistance.distance(path, otherPath);
+    }
+
+    /**
+     * The distances to all the paths of the new version, as the path finder evaluates them
+     */
+    @Benchmark
+    public int cursor() {
+        IncrementalPathDistance.Cursor cursor = pathDistance.cursor(path);
+        int sum = 0;
+        int depth = -1;
+        for (int i = 0; i < document.size(); i++) {
+            for (; depth >= document.getDepth(i); depth--) {
+                cursor.pop();
+            }
+            cursor.push(document.getNode(i));
+            depth++;
+            sum += cursor.distance();
+        }
+        return sum;
+    }
+
+    private static Path deepest(List<Path> paths) {
+        Path deepest = paths.get(0);
+        for (Path candidate : paths) {
+            if (candidate.getNodes().length > deepest.getNodes().length) {
+                deepest = candidate;
+            }
+        }
+        return deepest;
+    }
+}
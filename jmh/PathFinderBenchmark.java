@@ -0,0 +1,80 @@
+package com.epam.healenium.treecomparing.benchmark;
+
+import com.epam.healenium.treecomparing.HeuristicNodeDistance;
+import com.epam.healenium.treecomparing.LCSPathDistance;
+import com.epam.healenium.treecomparing.Node;
+import com.epam.healenium.treecomparing.NodeDistance;
+import com.epam.healenium.treecomparing.Path;
+import com.epam.healenium.treecomparing.PathDistance;
+import com.epam.healenium.treecomparing.PathFinder;
+import com.epam.healenium.treecomparing.PathQuery;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The stages of the search of a path of the old version of a synthetic page in the new version: enumeration of the
+ * leaves, LCS of the searched path with each leaf path, scoring of each leaf and the whole search.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PathFinderBenchmark {
+
+    private final PathDistance pathDistance = new LCSPathDistance();
+    private final NodeDistance nodeDistance = new HeuristicNodeDistance();
+    private final PathFinder pathFinder = new PathFinder(pathDistance, nodeDistance);
+    private PathQuery query;
+    private int[] leafDistances;
+
+    @Setup(Level.Trial)
+    public void setUp(Pages pages) {
+        query = new PathQuery(pages.path);
+        leafDistances = new int[pages.leafPaths.size()];
+        for (int i = 0; i < leafDistances.length; i++) {
+            leafDistances[i] = pathDistance.distance(pages.path, pages.leafPaths.get(i));
+        }
+    }
+
+    @Benchmark
+    public List<Node> leaves(Pages pages) {
+        return Pages.leaves(pages.newRoot);
+    }
+
+    @Benchmark
+    public int lcs(Pages pages) {
+        int sum = 0;
+        for (Path leafPath : pages.leafPaths) {
+            sum += pathDistance.distance(pages.path, leafPath);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public void nodeScoring(Pages pages, Blackhole blackhole) {
+        int height = pages.path.getNodes().length;
+        for (int i = 0; i < leafDistances.length; i++) {
+            blackhole.consume(nodeDistance.distance(query, pages.leafPaths.get(i).getLastNode(), leafDistances[i], height));
+        }
+    }
+
+    @Benchmark
+    public Node findNearest(Pages pages) {
+        return pathFinder.findNearest(pages.path, pages.newRoot);
+    }
+}
@@ -0,0 +1,241 @@
+package com.epam.healenium.treecomparing.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Generator of synthetic pages for benchmarks: an "old" version and a "new" version of the same page, derived from
+ * it by random mutations. The pages depend only on the parameters, the same parameters give the same bytes.
+ * <p>
+ * Each element gets a tag, an id for some elements, classes and other attributes taken from pools of the given
+ * cardinality and a text of about the given length. Each element of the new version is changed with the mutation rate
+ * probability: its text, class or attribute is changed, the element is removed, a sibling is inserted before it or it
+ * is wrapped into a new element. The same page is rendered both as HTML and as Appium-like XML.
+ */
+public final class SyntheticDom {
+
+    private static final String[] HTML_TAGS = {"div", "span", "section", "article", "nav", "header", "footer",
+            "aside", "ul", "em", "strong", "label"};
+    private static final String[] XML_TAGS = {"android.widget.FrameLayout", "android.widget.LinearLayout",
+            "android.widget.TextView", "android.widget.Button", "android.widget.ImageView",
+            "android.widget.EditText", "android.view.ViewGroup", "androidx.recyclerview.widget.RecyclerView"};
+    private static final String[] WORDS = {"order", "invoice", "customer", "delivered", "pending", "total", "price",
+            "quantity", "product", "review", "rating", "comment", "account", "balance", "payment", "status",
+            "address", "message", "subject", "search", "submit", "cancel", "login", "settings"};
+
+    private final long seed;
+    private final int depth;
+    private final int fanOut;
+    private final int classCardinality;
+    private final int attributeCardinality;
+    private final int textLength;
+    private final double mutationRate;
+    private final Element oldRoot;
+    private final Element newRoot;
+
+    /**
+     * @param seed                 the seed of random choices
+     * @param depth                the depth of the tree below the body
+     * @param fanOut               the max number of children of an element, the number is random up to it
+     * @param classCardinality     the number of distinct classes
+     * @param attributeCardinality the number of distinct values of each other attribute
+     * @param textLength           the average text length of an element in chars, 0 for no text
+     * @param mutationRate         the probability of each element to be changed in the new version, from 0 to 1
+     */
+    public SyntheticDom(long seed, int depth, int fanOut, int classCardinality, int attributeCardinality,
+                        int textLength, double mutationRate) {
+        this.seed = seed;
+        this.depth = depth;
+        this.fanOut = fanOut;
+        this.classCardinality = classCardinality;
+        this.attributeCardinality = attributeCardinality;
+        this.textLength = textLength;
+        this.mutationRate = mutationRate;
+        this.oldRoot = generate(new Random(seed), 0);
+        this.newRoot = mutate(oldRoot, new Random(~seed));
+    }
+
+    /**
+     * @return the HTML of the old version, UTF-8 encoded
+     */
+    public byte[] oldHtml() {
+        return html(oldRoot);
+    }
+
+    /**
+     * @return the HTML of the new version, UTF-8 encoded
+     */
+    public byte[] newHtml() {
+        return html(newRoot);
+    }
+
+    /**
+     * @return the XML of the old version, UTF-8 encoded
+     */
+    public byte[] oldXml() {
+        return xml(oldRoot);
+    }
+
+    /**
+     * @return the XML of the new version, UTF-8 encoded
+     */
+    public byte[] newXml() {
+        return xml(newRoot);
+    }
+
+    @Override
+    public String toString() {
+        return "SyntheticDom{seed=" + seed + ", depth=" + depth + ", fanOut=" + fanOut
+                + ", classCardinality=" + classCardinality + ", attributeCardinality=" + attributeCardinality
+                + ", textLength=" + textLength + ", mutationRate=" + mutationRate + '}';
+    }
+
+    private Element generate(Random random, int level) {
+        Element element = new Element(random.nextInt(HTML_TAGS.length));
+        if (random.nextInt(3) == 0) {
+            element.id = "id" + random.nextInt(Math.max(1, attributeCardinality * 4));
+        }
+        int classCount = classCardinality == 0 ? 0 : random.nextInt(3);
+        for (int i = 0; i < classCount; i++) {
+            element.classes.add("c" + random.nextInt(classCardinality));
+        }
+        if (attributeCardinality > 0) {
+            if (random.nextInt(3) == 0) {
+                element.attributes.put("name", "n" + random.nextInt(attributeCardinality));
+            }
+            if (random.nextInt(3) == 0) {
+                element.attributes.put("data-role", "r" + random.nextInt(attributeCardinality));
+            }
+        }
+        if (textLength > 0 && (level == depth || random.nextInt(4) == 0)) {
+            element.text = text(random);
+        }
+        if (level < depth) {
+            int childCount = 1 + random.nextInt(Math.max(1, fanOut));
+            for (int i = 0; i < childCount; i++) {
+                element.children.add(generate(random, level + 1));
+            }
+        }
+        return element;
+    }
+
+    /**
+     * @return a changed copy of the element
+     */
+    private Element mutate(Element element, Random random) {
+        Element copy = element.copy();
+        if (random.nextDouble() < mutationRate) {
+            switch (random.nextInt(3)) {
+                case 0:
+                    copy.text = textLength > 0 ? text(random) : null;
+                    break;
+                case 1:
+                    copy.classes.clear();
+                    if (classCardinality > 0) {
+                        copy.classes.add("c" + random.nextInt(classCardinality));
+                    }
+                    break;
+                default:
+                    copy.attributes.put("data-role", "m" + random.nextInt(Math.max(1, attributeCardinality)));
+            }
+        }
+        for (Element child : element.children) {
+            if (random.nextDouble() >= mutationRate) {
+                copy.children.add(mutate(child, random));
+                continue;
+            }
+            switch (random.nextInt(3)) {
+                case 0:
+                    // removed
+                    break;
+                case 1:
+                    copy.children.add(generate(random, depth));
+                    copy.children.add(mutate(child, random));
+                    break;
+                default:
+                    Element wrapper = new Element(0);
+                    wrapper.children.add(mutate(child, random));
+                    copy.children.add(wrapper);
+            }
+        }
+        return copy;
+    }
+
+    private String text(Random random) {
+        StringBuilder text = new StringBuilder();
+        int length = textLength / 2 + random.nextInt(textLength + 1);
+        while (text.length() < length) {
+            text.append(text.length() == 0 ? "" : " ").append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return text.toString();
+    }
+
+    private static byte[] html(Element root) {
+        StringBuilder html = new StringBuilder("<!DOCTYPE html><html><head><title>synthetic</title></head><body>");
+        render(root, html, HTML_TAGS, "id", "class");
+        return html.append("</body></html>").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] xml(Element root) {
+        StringBuilder xml = new StringBuilder("<?xml version='1.0' encoding='UTF-8' standalone='yes' ?>"
+                + "<hierarchy index=\"0\" class=\"hierarchy\" rotation=\"0\" width=\"1080\" height=\"2220\">");
+        render(root, xml, XML_TAGS, "resource-id", "content-desc");
+        return xml.append("</hierarchy>").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void render(Element element, StringBuilder out, String[] tags, String idName, String className) {
+        String tag = tags[element.tag % tags.length];
+        out.append('<').append(tag);
+        if (element.id != null) {
+            attribute(out, idName, element.id);
+        }
+        if (!element.classes.isEmpty()) {
+            attribute(out, className, String.join(" ", element.classes));
+        }
+        for (Map.Entry<String, String> attribute : element.attributes.entrySet()) {
+            attribute(out, attribute.getKey(), attribute.getValue());
+        }
+        out.append('>');
+        if (element.text != null) {
+            out.append(element.text);
+        }
+        for (Element child : element.children) {
+            render(child, out, tags, idName, className);
+        }
+        out.append("</").append(tag).append('>');
+    }
+
+    private static void attribute(StringBuilder out, String name, String value) {
+        out.append(' ').append(name).append("=\"").append(value).append('"');
+    }
+
+    private static final class Element {
+
+        private final int tag;
+        private String id;
+        private final List<String> classes = new ArrayList<>();
+        private final Map<String, String> attributes = new LinkedHashMap<>();
+        private String text;
+        private final List<Element> children = new ArrayList<>();
+
+        Element(int tag) {
+            this.tag = tag;
+        }
+
+        /**
+         * @return a copy of the element without children
+         */
+        Element copy() {
+            Element copy = new Element(tag);
+            copy.id = id;
+            copy.classes.addAll(classes);
+            copy.attributes.putAll(attributes);
+            copy.text = text;
+            return copy;
+        }
+    }
+}